@@ -0,0 +1,95 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.ungefroren.discord.BetonHelper.EmbedCache;
+import de.ungefroren.discord.BetonHelper.EmbedRenderer;
+import de.ungefroren.discord.BetonHelper.transport.JdaMessage;
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+import de.ungefroren.discord.BetonHelper.wiki.Answer;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import de.ungefroren.discord.BetonHelper.wiki.TipCategory;
+import net.dv8tion.jda.core.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering the pages that are sent as answer, for a single tip, a whole category and the help tip,
+ * compared to taking it from the {@link EmbedCache} and getting the discord embed of its first page, which is what
+ * every reply does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbedBenchmark {
+
+    private Tip tip;
+    private TipCategory category;
+    private Tip help;
+    private ZonedDateTime timestamp;
+    private EmbedCache cache;
+    private Answer answer;
+
+    @Setup
+    public void setup() {
+        KnowledgeSnapshot snapshot = WikiFixtures.snapshot(0);
+        category = (TipCategory) snapshot.getTips().get("events");
+        tip = category.getSubTip("give");
+        help = snapshot.getHelp();
+        timestamp = snapshot.getSynchronizedTimestamp();
+        cache = new EmbedCache();
+        cache.render(snapshot);
+        answer = new Answer(tip, snapshot);
+    }
+
+    @Benchmark
+    public List<TipPage> tip() {
+        return EmbedRenderer.render(tip, timestamp);
+    }
+
+    @Benchmark
+    public List<TipPage> category() {
+        return EmbedRenderer.render(category, timestamp);
+    }
+
+    @Benchmark
+    public List<TipPage> help() {
+        return EmbedRenderer.render(help, timestamp);
+    }
+
+    @Benchmark
+    public MessageEmbed cached() {
+        return JdaMessage.toEmbed(cache.get(answer).get(0));
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.ungefroren.discord.BetonHelper.EmbedCache;
+import de.ungefroren.discord.BetonHelper.MessageHandler;
+import de.ungefroren.discord.BetonHelper.transport.LocalTransport;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+
+/**
+ * Sends messages to the bot at a fixed rate through a {@link LocalTransport} and reports the throughput and latency
+ * percentiles of the answers.
+ * <p>
+ * Messages are sent on a fixed schedule, a message that is sent late because the previous one took too long
+ * counts the delay as latency as well. Without {@code --messages} a synthetic mix of
+ * {@link WikiFixtures#MESSAGES}, {@link WikiFixtures#MISSPELLED_MESSAGES} and {@link WikiFixtures#QUESTIONS} is
+ * sent, otherwise the lines of the given file are replayed in order.
+ * <p>
+ * Options: {@code --rate <messages per second>}, {@code --duration <seconds>}, {@code --warmup <seconds>},
+ * {@code --messages <file>}, {@code --pageSize <characters>}
+ */
+public class LoadGenerator {
+
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final MessageHandler handler;
+    private final List<String> messages;
+
+    private LoadGenerator(KnowledgeSnapshot snapshot, List<String> messages) {
+        EmbedCache embeds = new EmbedCache();
+        embeds.render(snapshot);
+        this.handler = new MessageHandler(() -> snapshot, () -> "betonhelper", embeds);
+        this.messages = messages;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rate = 1000, duration = 30, warmup = 10, pageSize = 0;
+        String file = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rate":
+                    rate = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--duration":
+                    duration = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--messages":
+                    file = args[i + 1];
+                    break;
+                case "--pageSize":
+                    pageSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<String> messages = file == null ? synthetic(10000) : recorded(file);
+        LoadGenerator generator = new LoadGenerator(WikiFixtures.snapshot(pageSize), messages);
+        System.out.println("Warming up for " + warmup + "s at " + rate + " messages/s...");
+        generator.run(rate, warmup);
+        System.out.println("Measuring for " + duration + "s at " + rate + " messages/s...");
+        generator.report(generator.run(rate, duration));
+    }
+
+    /**
+     * Builds a stream of chat messages, mostly with identifiers and some with typos or questions
+     */
+    private static List<String> synthetic(int count) {
+        Random random = new Random(42);
+        List<String> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            String[] pool = kind < 7 ? WikiFixtures.MESSAGES : kind < 9 ? WikiFixtures.MISSPELLED_MESSAGES : WikiFixtures.QUESTIONS;
+            messages.add(pool[random.nextInt(pool.length)]);
+        }
+        return messages;
+    }
+
+    /**
+     * Loads recorded chat messages, one message per line
+     */
+    private static List<String> recorded(String file) throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) messages.add(line);
+        }
+        if (messages.isEmpty()) throw new IllegalArgumentException(file + " contains no messages");
+        return messages;
+    }
+
+    /**
+     * Sends messages at a fixed rate
+     *
+     * @param rate    the number of messages per second
+     * @param seconds how long messages are sent
+     * @return the latencies of the answers
+     */
+    private Result run(int rate, int seconds) {
+        int count = rate * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        Result result = new Result(count);
+        LocalTransport transport = new LocalTransport(handler, message -> {
+            result.latencies[(int) message.getSequence()] = message.getLatency();
+            result.answered.incrementAndGet();
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long sendAt = start + i * interval;
+            //Parking oversleeps by tens of microseconds, so the last part is spent spinning
+            long wait = sendAt - System.nanoTime();
+            if (wait > SPIN_NANOS) LockSupport.parkNanos(wait - SPIN_NANOS);
+            while (System.nanoTime() < sendAt) {
+            }
+            transport.deliver(messages.get(i % messages.size()), sendAt);
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void report(Result result) {
+        double seconds = result.nanos / 1e9;
+        long answered = result.answered.get();
+        long[] sorted = Arrays.stream(result.latencies).filter(latency -> latency >= 0).sorted().toArray();
+        System.out.printf("Sent %d messages in %.1fs, %.0f messages/s%n", result.latencies.length, seconds,
+                          result.latencies.length / seconds);
+        System.out.printf("Answered %d messages, %.0f answers/s%n", answered, answered / seconds);
+        if (sorted.length == 0) return;
+        System.out.printf("Latency p50 %s, p99 %s, p999 %s, max %s%n",
+                          format(percentile(sorted, 0.5)), format(percentile(sorted, 0.99)),
+                          format(percentile(sorted, 0.999)), format(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.max(0, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static String format(long nanos) {
+        return nanos < 1_000_000 ? String.format("%.1fus", nanos / 1e3) : String.format("%.2fms", nanos / 1e6);
+    }
+
+    /**
+     * The outcome of one run, latencies of messages that weren't answered are -1
+     */
+    private static class Result {
+
+        private final long[] latencies;
+        private final AtomicLong answered = new AtomicLong();
+        private long nanos;
+
+        Result(int count) {
+            latencies = new long[count];
+            Arrays.fill(latencies, -1);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.MessageTokenizer;
+import de.ungefroren.discord.BetonHelper.wiki.QueryCache;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to find the answer to a chat message, including tokenizing the message.
+ * <p>
+ * Each invocation answers the next message of {@link WikiFixtures#MESSAGES}, {@link WikiFixtures#MISSPELLED_MESSAGES},
+ * {@link WikiFixtures#PARTIAL_MESSAGES} or {@link WikiFixtures#QUESTIONS}, {@code tokenize} only splits the message
+ * into words. The {@code Cached}
+ * variants answer through a {@link QueryCache} that already knows all messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    /**
+     * The minimum size of each wiki page, 0 uses the fixture pages as they are
+     */
+    @Param({"0", "1048576"})
+    private int pageSize;
+
+    private KnowledgeSnapshot snapshot;
+    private QueryCache queryCache;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        snapshot = WikiFixtures.snapshot(pageSize);
+        queryCache = new QueryCache(4096);
+        for (String message : WikiFixtures.MESSAGES) queryCache.findTip(snapshot, message, "betonhelper");
+        for (String message : WikiFixtures.QUESTIONS) queryCache.findTip(snapshot, message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTip() {
+        String message = WikiFixtures.MESSAGES[next];
+        next = (next + 1) % WikiFixtures.MESSAGES.length;
+        return snapshot.findTip(message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTipMisspelled() {
+        String message = WikiFixtures.MISSPELLED_MESSAGES[next % WikiFixtures.MISSPELLED_MESSAGES.length];
+        next = (next + 1) % WikiFixtures.MISSPELLED_MESSAGES.length;
+        return snapshot.findTip(message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTipPartial() {
+        String message = WikiFixtures.PARTIAL_MESSAGES[next % WikiFixtures.PARTIAL_MESSAGES.length];
+        next = (next + 1) % WikiFixtures.PARTIAL_MESSAGES.length;
+        return snapshot.findTip(message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTipQuestion() {
+        String message = WikiFixtures.QUESTIONS[next % WikiFixtures.QUESTIONS.length];
+        next = (next + 1) % WikiFixtures.QUESTIONS.length;
+        return snapshot.findTip(message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTipCached() {
+        String message = WikiFixtures.MESSAGES[next];
+        next = (next + 1) % WikiFixtures.MESSAGES.length;
+        return queryCache.findTip(snapshot, message, "betonhelper");
+    }
+
+    @Benchmark
+    public Tip findTipQuestionCached() {
+        String message = WikiFixtures.QUESTIONS[next % WikiFixtures.QUESTIONS.length];
+        next = (next + 1) % WikiFixtures.QUESTIONS.length;
+        return queryCache.findTip(snapshot, message, "betonhelper");
+    }
+
+    @Benchmark
+    public MessageTokenizer tokenize() {
+        String message = WikiFixtures.MESSAGES[next];
+        next = (next + 1) % WikiFixtures.MESSAGES.length;
+        return MessageTokenizer.get().tokenize(message, "betonhelper");
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.ungefroren.discord.BetonHelper.wiki.MarkdownSectionParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link MarkdownSectionParser} with the regular expression that was used before it.
+ * <p>
+ * The setup checks that both produce exactly the same sections, so this also works as regression check.
+ * The regular expression is not benchmarked with long sections because it throws a {@link StackOverflowError}
+ * for descriptions of a few thousand lines, see {@link #parserLongSection(LongSection, Blackhole)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SectionParserBenchmark {
+
+    /**
+     * The regular expression that matched the sections of the events, conditions and objectives pages before
+     */
+    static final Pattern LEGACY_REGEX = Pattern.compile(
+            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t]*(_[^\\n]+_)?[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$");
+
+    @Benchmark
+    public void legacyRegex(Page page, Blackhole blackhole) {
+        Matcher matcher = LEGACY_REGEX.matcher(page.content);
+        while (matcher.find()) {
+            blackhole.consume(matcher.group(2));
+            blackhole.consume(matcher.group(4));
+        }
+    }
+
+    @Benchmark
+    public void parser(Page page, Blackhole blackhole) {
+        MarkdownSectionParser parser = new MarkdownSectionParser(page.content, true);
+        while (parser.find()) {
+            blackhole.consume(parser.getIdentifier());
+            blackhole.consume(parser.getBody());
+        }
+    }
+
+    @Benchmark
+    public void parserLongSection(LongSection longSection, Blackhole blackhole) {
+        MarkdownSectionParser parser = new MarkdownSectionParser(longSection.content, true);
+        while (parser.find()) {
+            blackhole.consume(parser.getIdentifier());
+            blackhole.consume(parser.getBody());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"4096", "65536", "1048576", "4194304"})
+        private int size;
+
+        private String content;
+
+        @Setup
+        public void setup() {
+            content = WikiFixtures.grow("Events-List.md", size);
+            List<String> expected = new ArrayList<>();
+            Matcher matcher = LEGACY_REGEX.matcher(content);
+            while (matcher.find()) {
+                expected.add(matcher.group(1) + '\0' + matcher.group(2) + '\0' + matcher.group(3) + '\0' + matcher.group(4));
+            }
+            List<String> actual = new ArrayList<>();
+            MarkdownSectionParser parser = new MarkdownSectionParser(content, true);
+            while (parser.find()) {
+                actual.add(parser.getTitle() + '\0' + parser.getIdentifier() + '\0' + parser.getModifiers() + '\0' + parser.getBody());
+            }
+            if (expected.isEmpty() || !expected.equals(actual)) {
+                throw new IllegalStateException("Parser output differs from the legacy regex (" + actual.size() + " vs "
+                                                        + expected.size() + " sections)");
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LongSection {
+
+        @Param({"1000", "100000"})
+        private int lines;
+
+        private String content;
+
+        @Setup
+        public void setup() {
+            content = WikiFixtures.longSection(lines);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.ungefroren.discord.BetonHelper.utils.URLHelper;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import de.ungefroren.discord.BetonHelper.wiki.TipCategory;
+import de.ungefroren.discord.BetonHelper.wiki.WikiSource;
+
+/**
+ * Synthetic wiki pages and larger pages of any size built from them
+ * <p>
+ * The fixtures are hand-written pages in the format of the wiki, not copies of the real pages. They are kept with
+ * the test resources of the bot and shared with the benchmarks through the build.
+ */
+public final class WikiFixtures {
+
+    private static final Pattern HEADING = Pattern.compile("(?m)^## ([^:\\n]+): `([^`\\n]+)`");
+
+    /**
+     * Realistic chat messages as the bot receives them
+     */
+    public static final String[] MESSAGES = {
+            "@BetonHelper event message",
+            "@BetonHelper events",
+            "hey @BetonHelper how do I use the give event? it doesn't drop the items",
+            "@BetonHelper objective mobkill",
+            "@BetonHelper what conditions are there?",
+            "@BetonHelper variable item",
+            "@BetonHelper condition point equal",
+            "@BetonHelper I want to teleport a player after the conversation, which event can I use for that?",
+            "@BetonHelper help",
+            "@BetonHelper hello there, I have a problem with my quest, nothing happens when I talk to the npc"
+    };
+
+    /**
+     * Chat messages with misspelled identifiers
+     */
+    public static final String[] MISSPELLED_MESSAGES = {
+            "@BetonHelper event mesage",
+            "@BetonHelper objetive mobkil",
+            "@BetonHelper conditons",
+            "@BetonHelper evnt teleprot",
+            "@BetonHelper how does the pasword objective work?",
+            "@BetonHelper variabel npc"
+    };
+
+    /**
+     * Chat messages with the beginning of an identifier
+     */
+    public static final String[] PARTIAL_MESSAGES = {
+            "@BetonHelper objective mobk",
+            "@BetonHelper event tele",
+            "@BetonHelper condition perm",
+            "@BetonHelper event conv",
+            "@BetonHelper objective pass",
+            "@BetonHelper variable obj"
+    };
+
+    /**
+     * Chat messages that ask a question without any identifier
+     */
+    public static final String[] QUESTIONS = {
+            "@BetonHelper how do I give a player an item",
+            "@BetonHelper how can I remove items from the inventory of a player?",
+            "@BetonHelper the player must break some blocks, how do I check that?",
+            "@BetonHelper how do I show the name of the npc in a conversation",
+            "@BetonHelper I want to check the players health before the fight starts"
+    };
+
+    private WikiFixtures() {
+    }
+
+    /**
+     * Loads a fixture page from the fixtures folder
+     *
+     * @param name the file name of the page
+     * @return the content of the page, with \n as line separator
+     */
+    public static String load(String name) {
+        try (InputStream in = WikiFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalArgumentException("Unknown fixture " + name);
+            BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            StringBuilder string = new StringBuilder();
+            String l;
+            while ((l = br.readLine()) != null) string.append(l).append('\n');
+            return string.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a page of at least the given size by repeating a fixture page.
+     * Each copy gets unique identifiers so the page behaves like a bigger wiki.
+     *
+     * @param name       the file name of the fixture page
+     * @param targetSize the minimum number of characters of the page
+     * @return the generated page
+     */
+    public static String grow(String name, int targetSize) {
+        String page = load(name);
+        StringBuilder builder = new StringBuilder(targetSize + page.length());
+        builder.append(page);
+        for (int copy = 1; builder.length() < targetSize; copy++) {
+            Matcher matcher = HEADING.matcher(page);
+            builder.append(matcher.replaceAll("## $1 " + copy + ": `$2" + copy + "`"));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the wiki pages of the bot with their fixture as local file
+     */
+    public static List<WikiSource> sources() {
+        return Arrays.asList(
+                source("event", "events", "Events List", "Events-List", true),
+                source("condition", "conditions", "Conditions List", "Conditions-List", true),
+                source("objective", "objectives", "Objectives List", "Objectives-List", true),
+                source("variable", "variables", "Variables List", "Variables-List", false));
+    }
+
+    private static WikiSource source(String identifier, String plural, String title, String page, boolean withAttributes) {
+        return new WikiSource(identifier, plural, title,
+                              URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/" + page + ".md"),
+                              new File(page + ".md"), "https://github.com/Co0sh/BetonQuest/wiki/" + page, withAttributes);
+    }
+
+    /**
+     * Parses all fixture pages, grown to the given size, into a snapshot
+     *
+     * @param targetSize the minimum number of characters of each page
+     * @return a snapshot containing all parsed categories
+     */
+    public static KnowledgeSnapshot snapshot(int targetSize) {
+        List<TipCategory> categories = new ArrayList<>();
+        for (WikiSource source : sources()) {
+            categories.add(source.parse(grow(source.getFile().getName(), targetSize)));
+        }
+        return new KnowledgeSnapshot(1, ZonedDateTime.now(), help(), categories);
+    }
+
+    /**
+     * @return a help tip like the one of the bot
+     */
+    public static Tip help() {
+        return new Tip("Need help with the bot?", "Mention the bot and write the category and the name of what you are "
+                + "searching for.\nFor example: `@BetonHelper event message`", "help");
+    }
+
+    /**
+     * Builds a page with a single section that has a very long description
+     *
+     * @param lines the number of lines of the description
+     * @return the generated page
+     */
+    public static String longSection(int lines) {
+        StringBuilder builder = new StringBuilder("## Long Section: `long` _persistent_\n\n");
+        for (int i = 0; i < lines; i++) {
+            builder.append("This is line ").append(i).append(" of a very long description.\n");
+        }
+        return builder.toString();
+    }
+}
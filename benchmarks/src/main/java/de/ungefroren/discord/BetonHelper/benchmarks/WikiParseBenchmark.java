@@ -0,0 +1,71 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.ungefroren.discord.BetonHelper.wiki.WikiSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures parsing the synthetic fixture pages into categories of tips, like a synchronization of the wiki does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WikiParseBenchmark {
+
+    /**
+     * The minimum size of each wiki page, 0 uses the fixture pages as they are
+     */
+    @Param({"0", "65536", "1048576", "4194304"})
+    private int pageSize;
+
+    private List<WikiSource> sources;
+    private List<String> pages;
+
+    @Setup
+    public void setup() {
+        sources = WikiFixtures.sources();
+        pages = new ArrayList<>();
+        for (WikiSource source : sources) pages.add(WikiFixtures.grow(source.getFile().getName(), pageSize));
+    }
+
+    @Benchmark
+    public void parseAll(Blackhole blackhole) {
+        for (int i = 0; i < sources.size(); i++) {
+            blackhole.consume(sources.get(i).parse(pages.get(i)));
+        }
+    }
+}
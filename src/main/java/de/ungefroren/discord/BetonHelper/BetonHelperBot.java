@@ -18,54 +18,129 @@
 package de.ungefroren.discord.BetonHelper;
 
 import javax.security.auth.login.LoginException;
-import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import de.ungefroren.discord.BetonHelper.utils.FileHelper;
+import de.ungefroren.discord.BetonHelper.metrics.BotMetrics;
+import de.ungefroren.discord.BetonHelper.metrics.LatencyHistogram;
+import de.ungefroren.discord.BetonHelper.metrics.MetricsRegistry;
+import de.ungefroren.discord.BetonHelper.metrics.MetricsServer;
+import de.ungefroren.discord.BetonHelper.transport.JdaMessage;
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
 import de.ungefroren.discord.BetonHelper.wiki.BetonWiki;
-import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import de.ungefroren.discord.BetonHelper.wiki.ChangeSet;
+import de.ungefroren.discord.BetonHelper.wiki.SyncReport;
+import de.ungefroren.discord.BetonHelper.wiki.SyncScheduler;
+import net.dv8tion.jda.bot.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.bot.sharding.ShardManager;
 import net.dv8tion.jda.client.events.relationship.FriendRequestReceivedEvent;
-import net.dv8tion.jda.core.AccountType;
-import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.JDA;
-import net.dv8tion.jda.core.JDABuilder;
 import net.dv8tion.jda.core.entities.ChannelType;
 import net.dv8tion.jda.core.entities.Game;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.TextChannel;
 import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.Event;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.StatusChangeEvent;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.events.message.react.GenericMessageReactionEvent;
+import net.dv8tion.jda.core.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.core.events.message.react.MessageReactionRemoveEvent;
+import net.dv8tion.jda.core.events.self.SelfUpdateNameEvent;
 import net.dv8tion.jda.core.exceptions.InsufficientPermissionException;
-import net.dv8tion.jda.core.hooks.AnnotatedEventManager;
-import net.dv8tion.jda.core.hooks.SubscribeEvent;
+import net.dv8tion.jda.core.exceptions.PermissionException;
+import net.dv8tion.jda.core.hooks.EventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Main file of the bot
  * <p>
+ * Events are dispatched with plain instanceof checks instead of JDA's reflective annotated event manager. Messages
+ * are only filtered on the event thread of a shard and answered by the {@link MessageWorkers}.
+ * <p>
  * Created on 24.09.2018.
  *
  * @author Jonas Blocher
  */
-public class BetonHelperBot {
+public class BetonHelperBot implements EventListener {
 
     public final static Logger log = LoggerFactory.getLogger(BetonHelperBot.class);
-    private static final int WIKI_SYNCH_INTERVALL = 15;//In mintues
     private static BetonHelperBot instance;
-    private JDA jda;
+    /**
+     * The number of shards the bot is split into, each shard has its own gateway connection and event thread
+     */
+    private static final int SHARDS = Integer.getInteger("betonhelper.shards", 1);
+    /**
+     * The port metrics are served on for Prometheus, disabled if not set
+     */
+    private static final int METRICS_PORT = Integer.getInteger("betonhelper.metrics.port", -1);
+    private static final String METRICS_HOST = System.getProperty("betonhelper.metrics.host", "127.0.0.1");
+    /**
+     * The time of the day the resources of the bot are renewed
+     */
+    private static final LocalTime RECYCLE_TIME = LocalTime.parse(System.getProperty("betonhelper.recycle.time", "04:20"));
+    /**
+     * The id of the text channel the changes of the wiki are posted to, disabled if not set
+     */
+    private static final long CHANGELOG_CHANNEL = Long.getLong("betonhelper.changelog.channel", -1);
+    private static final long SHARD_RESTART_TIMEOUT = Long.getLong("betonhelper.recycle.shardTimeout", 60000);//In milliseconds
+    private ShardManager shardManager;
+    private final CountDownLatch readyShards;
+    private volatile long selfUserId;
+    private volatile String selfUserName;
     private BetonWiki wiki;
+    private SyncScheduler syncScheduler;
+    private volatile MessageFilter messageFilter;
+    private final EmbedCache embeds = new EmbedCache();
+    private final PaginationCache paginations = new PaginationCache(
+            Integer.getInteger("betonhelper.pagination.maxMessages", 500),
+            TimeUnit.MINUTES.toMillis(Long.getLong("betonhelper.pagination.expireMinutes", 30)));
+    private final ReplyThrottle throttle = new ReplyThrottle();
+    private final MessageHandler handler = new MessageHandler(
+            message -> wiki.selectSnapshot(message.getContent(), message.getGuildId()), this::getSelfUserName, embeds,
+            throttle);
+    private final MessageWorkers workers = new MessageWorkers(handler::handle);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final LatencyHistogram replyLatency = new LatencyHistogram();
+    private MetricsServer metricsServer;
+    private final LifecycleManager lifecycle = new LifecycleManager();
     private ScheduledExecutorService executorService;
+    private boolean warmStart;
 
     public BetonHelperBot() {
         instance = this;
+        if (SHARDS < 1) {
+            log.error("Invalid shard count " + SHARDS + ", -Dbetonhelper.shards must be at least 1");
+            System.exit(1);
+        }
+        readyShards = new CountDownLatch(SHARDS);
+        wiki = new BetonWiki();
+        syncScheduler = new SyncScheduler(wiki);
+        wiki.addSnapshotListener(embeds::render);
+        new BotMetrics(metrics, wiki, handler, replyLatency, this::getMessageFilter, throttle, workers);
+        if (CHANGELOG_CHANNEL > 0) wiki.addSyncListener(this::postChangelog);
+        //Answer with the saved database right after login and synchronize in the background
+        warmStart = wiki.loadPersisted();
+        if (!warmStart) wiki.synchronizeWiki();
         try {
-            jda = new JDABuilder(AccountType.BOT).setToken(loadToken()).build();
-            jda.awaitReady();
+            shardManager = new DefaultShardManagerBuilder()
+                    .setToken(loadToken())
+                    .setShardsTotal(SHARDS)
+                    .addEventListeners(this)
+                    .setGame(Game.watching("Mention me if you need help!"))
+                    .build();
+            readyShards.await();
         } catch (LoginException e) {
             log.error("Error while login: " + e.getMessage());
             System.exit(1);
@@ -75,7 +150,6 @@ public class BetonHelperBot {
         }
         onStart();
         Runtime.getRuntime().addShutdownHook(new Thread(this::onStop));
-        scheduleRestart();
 
     }
 
@@ -88,18 +162,92 @@ public class BetonHelperBot {
     }
 
     private void onStart() {
-        log.info("BetonHelperBot succesfully logged in!");
-        wiki = new BetonWiki();
-        wiki.synchronizeWiki();
+        log.info("BetonHelperBot succesfully logged in with " + shardManager.getShardsTotal() + " shard(s)!");
         executorService = Executors.newSingleThreadScheduledExecutor();
-        executorService.scheduleAtFixedRate(wiki::synchronizeWiki, WIKI_SYNCH_INTERVALL, WIKI_SYNCH_INTERVALL, TimeUnit.MINUTES);
-        jda.setEventManager(new AnnotatedEventManager());
-        jda.addEventListener(this);
-        jda.getPresence().setGame(Game.watching("Mention me if you need help!"));
+        //The wiki is synchronized on its own thread, so a slow synchronization doesn't delay the recycling
+        syncScheduler.start(warmStart);
+        lifecycle.register("wiki downloads", wiki::recycleDownloads);
+        lifecycle.register("embed cache", () -> embeds.renderAll(wiki.getSnapshots()));
+        lifecycle.register("pagination cache", paginations::removeExpired);
+        lifecycle.register("gateway connections", this::restartShards);
+        lifecycle.scheduleDaily(executorService, RECYCLE_TIME);
+        metrics.histogram("betonhelper_recycle_seconds", "Duration of renewing the resources of the bot", "",
+                          lifecycle.getDurations());
+        metrics.gauge("betonhelper_sync_interval_seconds", "Current interval between two wiki synchronizations", "",
+                      () -> syncScheduler.getInterval() / 1000.0);
+        metrics.counter("betonhelper_sync_failures_total", "Wiki synchronizations that could not download all pages", "",
+                        syncScheduler::getFailures);
+        for (SyncScheduler.State state : SyncScheduler.State.values()) {
+            metrics.gauge("betonhelper_sync_breaker_state", "State of the circuit breaker of the wiki synchronization",
+                          MetricsRegistry.label("state", state.name().toLowerCase()),
+                          () -> syncScheduler.getState() == state ? 1 : 0);
+        }
+        if (METRICS_PORT > 0) {
+            try {
+                metricsServer = new MetricsServer(metrics, METRICS_HOST, METRICS_PORT);
+                metricsServer.addTrigger("/sync", syncScheduler::trigger);
+            } catch (IOException e) {
+                log.error("Could not start the metrics server:", e);
+            }
+        }
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        //Ordered by frequency, messages and reactions are by far the most common events
+        if (event instanceof MessageReceivedEvent) {
+            onMessage((MessageReceivedEvent) event);
+        } else if (event instanceof MessageReactionAddEvent) {
+            onReactionAdd((MessageReactionAddEvent) event);
+        } else if (event instanceof MessageReactionRemoveEvent) {
+            onReactionRemove((MessageReactionRemoveEvent) event);
+        } else if (event instanceof StatusChangeEvent) {
+            onStatusChange((StatusChangeEvent) event);
+        } else if (event instanceof ReadyEvent) {
+            onReady((ReadyEvent) event);
+        } else if (event instanceof SelfUpdateNameEvent) {
+            onSelfUpdateName((SelfUpdateNameEvent) event);
+        } else if (event instanceof FriendRequestReceivedEvent) {
+            acceptFriendRequests((FriendRequestReceivedEvent) event);
+        }
+    }
+
+    private void onReady(ReadyEvent event) {
+        JDA shard = event.getJDA();
+        synchronized (this) {
+            //All shards log in with the same account, the first one that is ready provides it
+            if (messageFilter == null) {
+                selfUserId = shard.getSelfUser().getIdLong();
+                selfUserName = shard.getSelfUser().getName().toLowerCase();
+                messageFilter = new MessageFilter(selfUserId);
+            }
+        }
+        log.info("Shard " + shard.getShardInfo().getShardString() + " is ready");
+        readyShards.countDown();
+    }
+
+    private void onStatusChange(StatusChangeEvent event) {
+        log.debug("Shard " + event.getJDA().getShardInfo().getShardString() + " changed status from "
+                          + event.getOldStatus() + " to " + event.getNewStatus());
     }
 
     private void onStop() {
         log.info("BetonHelperBot shutting down...");
+        if (messageFilter != null) {
+            log.info("Accepted " + messageFilter.getAccepted() + " messages, rejected " + messageFilter.getRejectedOwn()
+                             + " own and " + messageFilter.getRejectedNotMentioned() + " not mentioning the bot");
+        }
+        syncScheduler.shutdown();
+        workers.shutdown(5000);
+        throttle.shutdown();
+        if (metricsServer != null) metricsServer.stop();
+        log.info("Answered " + handler.getQueryCache().getHits() + " messages from the cache and searched "
+                         + handler.getQueryCache().getMisses());
+        log.info("Shed " + workers.getShedQueueFull() + " messages because all workers were busy and "
+                         + workers.getShedExpired() + " because they waited too long");
+        log.info("Dropped " + throttle.getDroppedUser() + " requests of spamming users and " + throttle.getDroppedChannel()
+                         + " in busy channels, coalesced " + throttle.getCoalesced() + " and ignored "
+                         + throttle.getDuplicates() + " duplicate requests");
         executorService.shutdownNow();
         try {
             executorService.awaitTermination(5, TimeUnit.SECONDS);
@@ -113,48 +261,114 @@ public class BetonHelperBot {
         log.info(" ");
     }
 
-    @SubscribeEvent
-    public void onMessage(MessageReceivedEvent event) {
-        if ((event.getChannelType() == ChannelType.PRIVATE && !isSelfUser(event.getAuthor()))
-                || event.getMessage().getMentionedUsers().stream().anyMatch(this::isSelfUser)) {
-            Tip tip = wiki.findTip(event.getMessage().getContentDisplay());
-            if (tip == null) {
-                log.warn("Could not find tip for the following message: " + event.getMessage());
-                return;
-            }
-            EmbedBuilder embed = new EmbedBuilder()
-                    .setColor(new Color(198, 140, 83))
-                    .setAuthor(tip.getTitle())
-                    .setDescription(tip.getText())
-                    .setFooter("from BetonQuest wiki",
-                               "https://cdn.discordapp.com/app-icons/494162764403572748/d7680ea0dfa2d1da1a95676435f526c1.png?size=32");
-            tip.getAdditionalInformation().forEach(info -> embed.addField(info.getTitle(), info.getContent(), false));
-            if (wiki.getSynchronized_timestamp() != null) embed.setTimestamp(wiki.getSynchronized_timestamp());
+    private void onMessage(MessageReceivedEvent event) {
+        MessageFilter filter = messageFilter;
+        if (filter != null && filter.accept(event)) {
+            workers.submit(new JdaMessage(event, paginations, replyLatency));
+        }
+    }
+
+    private void onReactionAdd(MessageReactionAddEvent event) {
+        if (isSelfUser(event.getUser())) return;
+        turnPage(event);
+        //In guilds the reaction is removed so it can be used again, in private channels bots can't remove reactions
+        if (event.getChannelType() != ChannelType.PRIVATE && isPageReaction(event)) {
             try {
-                event.getChannel().sendMessage(event.getAuthor().getAsMention()).embed(embed.build()).queue();
-            } catch (InsufficientPermissionException ignored) {
+                event.getReaction().removeReaction(event.getUser()).queue();
+            } catch (PermissionException ignored) {
             }
         }
     }
 
-    @SubscribeEvent
-    public void acceptFriendRequests(FriendRequestReceivedEvent event) {
+    private void onReactionRemove(MessageReactionRemoveEvent event) {
+        //In private channels removing the reaction again turns the page as well
+        if (event.getChannelType() == ChannelType.PRIVATE && !isSelfUser(event.getUser())) turnPage(event);
+    }
+
+    /**
+     * Shows the previous or next page of a multi page answer if the reaction is one of the page reactions
+     *
+     * @param event the event of the reaction that was added or removed
+     */
+    private void turnPage(GenericMessageReactionEvent event) {
+        if (!isPageReaction(event)) return;
+        int delta = PaginationCache.PREVIOUS_PAGE.equals(event.getReactionEmote().getName()) ? -1 : 1;
+        TipPage page = paginations.turn(event.getMessageIdLong(), delta);
+        if (page == null) return;
+        try {
+            event.getChannel().editMessageById(event.getMessageIdLong(), JdaMessage.toEmbed(page)).queue();
+        } catch (InsufficientPermissionException ignored) {
+        }
+    }
+
+    private boolean isPageReaction(GenericMessageReactionEvent event) {
+        if (event.getReactionEmote().isEmote()) return false;
+        String name = event.getReactionEmote().getName();
+        return PaginationCache.PREVIOUS_PAGE.equals(name) || PaginationCache.NEXT_PAGE.equals(name);
+    }
+
+    private void onSelfUpdateName(SelfUpdateNameEvent event) {
+        selfUserName = event.getNewName().toLowerCase();
+    }
+
+    private void acceptFriendRequests(FriendRequestReceivedEvent event) {
         event.getFriendRequest().accept();
     }
 
     /**
-     * Schedules the bot to shutdown at 4:20 (handle restart with simple loop in start script)
+     * Restarts the shards one after another, so with multiple shards the others keep answering.
+     * <p>
+     * A shard can only be started again after its old connection was closed, so a single shard is not restarted:
+     * the bot would not receive any messages until it reconnected.
      */
-    private void scheduleRestart() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime restartTime = now.withHour(4).withMinute(20).withSecond(0);
-        if (now.compareTo(restartTime) > 0) restartTime = restartTime.plusDays(1);
-        executorService.schedule(() -> {
-            System.out.println();
-            System.out.println("Restarting...");
-            System.out.println();
-            System.exit(0);
-        }, Duration.between(now, restartTime).getSeconds(), TimeUnit.SECONDS);
+    private void restartShards() {
+        if (shardManager.getShardsTotal() == 1) {
+            log.info("Not reconnecting the only shard, the bot would not receive messages while it reconnects");
+            return;
+        }
+        for (JDA shard : new ArrayList<>(shardManager.getShards())) {
+            int shardId = shard.getShardInfo().getShardId();
+            shardManager.restart(shardId);
+            long deadline = System.currentTimeMillis() + SHARD_RESTART_TIMEOUT;
+            while (true) {
+                JDA restarted = shardManager.getShardById(shardId);
+                if (restarted != null && restarted != shard && restarted.getStatus() == JDA.Status.CONNECTED) break;
+                if (System.currentTimeMillis() > deadline) {
+                    log.warn("Shard " + shardId + " did not reconnect within " + SHARD_RESTART_TIMEOUT + "ms");
+                    break;
+                }
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts the tips that were changed by a synchronization to the changelog channel
+     */
+    private void postChangelog(SyncReport report) {
+        ChangeSet changes = report.getChanges();
+        if (changes.isEmpty() || shardManager == null) return;
+        TextChannel channel = shardManager.getTextChannelById(CHANGELOG_CHANNEL);
+        if (channel == null) {
+            log.warn("Changelog channel " + CHANGELOG_CHANNEL + " not found");
+            return;
+        }
+        String more = "\n\u2026";
+        StringBuilder message = new StringBuilder("**The wiki was updated:**");
+        for (ChangeSet.Change change : changes.getChanges()) {
+            String line = "\n\u2022 " + change;
+            if (message.length() + line.length() + more.length() > Message.MAX_CONTENT_LENGTH) {
+                message.append(more);
+                break;
+            }
+            message.append(line);
+        }
+        channel.sendMessage(message).queue(null, e -> log.warn("Could not post the changelog: " + e.getMessage()));
     }
 
     /**
@@ -190,13 +404,64 @@ public class BetonHelperBot {
      * @return if the supplied discord user account is this bot account himself
      */
     public boolean isSelfUser(User user) {
-        return user.getIdLong() == jda.getSelfUser().getIdLong();
+        return user.getIdLong() == selfUserId;
+    }
+
+    /**
+     * @return the status of each shard by its shard id
+     */
+    public Map<Integer, JDA.Status> getShardStatuses() {
+        Map<Integer, JDA.Status> statuses = new TreeMap<>();
+        for (JDA shard : shardManager.getShards()) statuses.put(shard.getShardInfo().getShardId(), shard.getStatus());
+        return statuses;
+    }
+
+    /**
+     * @return the shard manager that holds the gateway connections of the bot
+     */
+    public ShardManager getShardManager() {
+        return shardManager;
+    }
+
+    /**
+     * @return the throttle that limits the replies of the bot
+     */
+    public ReplyThrottle getReplyThrottle() {
+        return throttle;
+    }
+
+    /**
+     * @return the scheduler that synchronizes the wiki, {@link SyncScheduler#trigger()} synchronizes it immediately
+     */
+    public SyncScheduler getSyncScheduler() {
+        return syncScheduler;
+    }
+
+    /**
+     * @return the manager that renews the resources of the bot
+     */
+    public LifecycleManager getLifecycle() {
+        return lifecycle;
+    }
+
+    /**
+     * @return the registry that holds all metrics of the bot
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the filter that decides which messages are answered
+     */
+    public MessageFilter getMessageFilter() {
+        return messageFilter;
     }
 
     /**
-     * @return the name of the bot account
+     * @return the lowercase name of the bot account, updated when the name changes
      */
     public String getSelfUserName() {
-        return jda.getSelfUser().getName();
+        return selfUserName;
     }
 }
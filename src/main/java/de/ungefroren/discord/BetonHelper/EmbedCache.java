@@ -0,0 +1,171 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+import de.ungefroren.discord.BetonHelper.wiki.Answer;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import de.ungefroren.discord.BetonHelper.wiki.TipCategory;
+
+/**
+ * Holds the rendered pages of all tips of the current snapshots, so answering a message doesn't need to render them.
+ * <p>
+ * The embeds are rendered once when a snapshot is published. Tips that are unchanged since the previous snapshot
+ * keep their pages, only the timestamp is updated. Each version of the wiki has its own pages, but tips that are
+ * shared between versions are not rendered again.
+ * <p>
+ * Rendering is serialized and the pages of a snapshot are only published if no newer snapshot of the same version
+ * of the wiki was published in the meantime, so a slow {@link #renderAll(Collection)} can't replace newer pages.
+ */
+public class EmbedCache {
+
+    /**
+     * The embeds of the latest snapshot of each version of the wiki, the current wiki has the key {@code ""}
+     */
+    private final Map<String, Rendered> rendered = new ConcurrentHashMap<>();
+
+    /**
+     * Renders the embeds of all new tips of a snapshot and replaces the embeds of the previous one
+     *
+     * @param snapshot the snapshot that was published
+     */
+    public synchronized void render(KnowledgeSnapshot snapshot) {
+        String key = key(snapshot.getWikiVersion());
+        List<Rendered> candidates = new ArrayList<>();
+        Rendered previous = rendered.get(key);
+        if (previous != null) candidates.add(previous);
+        for (Map.Entry<String, Rendered> entry : rendered.entrySet()) {
+            if (!entry.getKey().equals(key)) candidates.add(entry.getValue());
+        }
+        publish(key, render(snapshot, candidates));
+    }
+
+    /**
+     * Renders the embeds of all tips of the snapshots again, without reusing any pages of earlier snapshots
+     *
+     * @param snapshots the current snapshots of all versions of the wiki
+     */
+    public synchronized void renderAll(Collection<KnowledgeSnapshot> snapshots) {
+        Map<String, Rendered> renderedAll = new HashMap<>();
+        for (KnowledgeSnapshot snapshot : snapshots) {
+            renderedAll.put(key(snapshot.getWikiVersion()), render(snapshot, new ArrayList<>(renderedAll.values())));
+        }
+        for (Map.Entry<String, Rendered> entry : renderedAll.entrySet()) publish(entry.getKey(), entry.getValue());
+        rendered.keySet().retainAll(renderedAll.keySet());
+    }
+
+    /**
+     * Replaces the pages of a version of the wiki unless they already belong to a newer snapshot
+     */
+    private void publish(String key, Rendered pages) {
+        Rendered current = rendered.get(key);
+        if (current != null && current.version > pages.version) {
+            BetonHelperBot.log.debug("Discarded embeds of outdated snapshot " + pages.version);
+            return;
+        }
+        rendered.put(key, pages);
+    }
+
+    private static String key(String wikiVersion) {
+        return wikiVersion == null ? "" : wikiVersion;
+    }
+
+    private static Rendered render(KnowledgeSnapshot snapshot, List<Rendered> candidates) {
+        long start = System.currentTimeMillis();
+        ZonedDateTime timestamp = snapshot.getSynchronizedTimestamp();
+        Map<Tip, List<TipPage>> embeds = new IdentityHashMap<>();
+        int reused = put(embeds, snapshot.getHelp(), candidates, timestamp);
+        for (TipCategory category : snapshot.getCategories()) {
+            reused += put(embeds, category, candidates, timestamp);
+            for (Tip tip : category.getSubTips()) reused += put(embeds, tip, candidates, timestamp);
+        }
+        BetonHelperBot.log.debug("Rendered " + (embeds.size() - reused) + " embeds and reused " + reused
+                                         + " for snapshot " + snapshot.getVersion()
+                                         + (snapshot.getWikiVersion() == null ? "" : " of " + snapshot.getWikiVersion())
+                                         + " in " + (System.currentTimeMillis() - start) + "ms");
+        return new Rendered(snapshot.getVersion(), timestamp, embeds);
+    }
+
+    /**
+     * Adds the pages of a tip, taking them from the previous snapshot or another version if the tip is unchanged
+     *
+     * @return 1 if the pages were reused, 0 if they were rendered
+     */
+    private static int put(Map<Tip, List<TipPage>> embeds, Tip tip, List<Rendered> candidates,
+                           ZonedDateTime timestamp) {
+        for (Rendered candidate : candidates) {
+            List<TipPage> pages = candidate.embeds.get(tip);
+            if (pages == null) continue;
+            embeds.put(tip, Objects.equals(candidate.timestamp, timestamp) ? pages : restamp(pages, timestamp));
+            return 1;
+        }
+        embeds.put(tip, EmbedRenderer.render(tip, timestamp));
+        return 0;
+    }
+
+    /**
+     * Copies pages with a new timestamp, which is much cheaper than rendering them again
+     */
+    private static List<TipPage> restamp(List<TipPage> pages, ZonedDateTime timestamp) {
+        List<TipPage> restamped = new ArrayList<>(pages.size());
+        for (TipPage page : pages) restamped.add(page.withTimestamp(timestamp));
+        return restamped;
+    }
+
+    /**
+     * Gets the pages of an answer
+     *
+     * @param answer the answer to a message
+     * @return the cached pages or newly rendered ones if the answer is not from a current snapshot
+     */
+    public List<TipPage> get(Answer answer) {
+        Rendered current = rendered.get(key(answer.getSnapshot().getWikiVersion()));
+        if (current != null && current.version == answer.getVersion()) {
+            List<TipPage> pages = current.embeds.get(answer.getTip());
+            if (pages != null) return pages;
+        }
+        return EmbedRenderer.render(answer.getTip(), answer.getSnapshot().getSynchronizedTimestamp());
+    }
+
+    /**
+     * The embeds of one snapshot, never modified after construction
+     */
+    private static class Rendered {
+
+        private final long version;
+        private final ZonedDateTime timestamp;
+        private final Map<Tip, List<TipPage>> embeds;
+
+        Rendered(long version, ZonedDateTime timestamp, Map<Tip, List<TipPage>> embeds) {
+            this.version = version;
+            this.timestamp = timestamp;
+            this.embeds = embeds;
+        }
+    }
+}
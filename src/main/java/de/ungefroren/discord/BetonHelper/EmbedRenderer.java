@@ -0,0 +1,165 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.awt.Color;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+
+/**
+ * Renders tips into pages that respect the size limits of discord embeds.
+ * <p>
+ * Descriptions that are too long are split into multiple pages. Pages are split after line breaks or after the
+ * commas of lists, code blocks that span over a page boundary are closed and reopened on the next page.
+ * Additional information that doesn't fit next to a description is truncated or left out.
+ */
+public final class EmbedRenderer {
+
+    private static final Color COLOR = new Color(198, 140, 83);
+    private static final String
+            FOOTER = "from BetonQuest wiki",
+            FOOTER_ICON = "https://cdn.discordapp.com/app-icons/494162764403572748/d7680ea0dfa2d1da1a95676435f526c1.png?size=32",
+            CODE_BLOCK = "```";
+    /**
+     * Characters reserved in the footer for the page number
+     */
+    private static final int PAGE_NUMBER_LENGTH = 24;
+    /**
+     * The size limits of discord embeds
+     */
+    private static final int
+            TITLE_MAX_LENGTH = 256,
+            VALUE_MAX_LENGTH = 1024,
+            TEXT_MAX_LENGTH = 2048,
+            EMBED_MAX_LENGTH = 6000,
+            MAX_FIELDS = 25;
+    /**
+     * Characters of an embed that are always left for the description, fields that don't fit are truncated or dropped
+     */
+    private static final int MIN_DESCRIPTION_LENGTH = 1024;
+
+    private EmbedRenderer() {
+    }
+
+    /**
+     * Renders a tip into one or more pages
+     *
+     * @param tip       the tip to show
+     * @param timestamp the timestamp when the wiki was last synchronized or null
+     * @return the pages of the tip, at least one
+     */
+    public static List<TipPage> render(Tip tip, ZonedDateTime timestamp) {
+        String title = truncate(tip.getTitle(), TITLE_MAX_LENGTH);
+        List<Tip.AdditionalInfo> fields = new ArrayList<>();
+        int fixedLength = (title == null ? 0 : title.length()) + FOOTER.length() + PAGE_NUMBER_LENGTH;
+        for (Tip.AdditionalInfo info : tip.getAdditionalInformation()) {
+            if (fields.size() == MAX_FIELDS) break;
+            String fieldTitle = truncate(info.getTitle(), TITLE_MAX_LENGTH);
+            int available = EMBED_MAX_LENGTH - MIN_DESCRIPTION_LENGTH - fixedLength - fieldTitle.length();
+            //A field needs at least a few characters of its content to be useful
+            if (available < Math.min(16, info.getContent().length())) break;
+            Tip.AdditionalInfo field = new Tip.AdditionalInfo(fieldTitle, truncate(info.getContent(),
+                                                              Math.min(VALUE_MAX_LENGTH, available)));
+            fields.add(field);
+            fixedLength += field.getTitle().length() + field.getContent().length();
+        }
+        int limit = Math.min(TEXT_MAX_LENGTH, EMBED_MAX_LENGTH - fixedLength);
+        List<String> descriptions = split(tip.getText(), limit);
+        List<TipPage> pages = new ArrayList<>(descriptions.size());
+        for (int page = 0; page < descriptions.size(); page++) {
+            pages.add(new TipPage(COLOR, title, descriptions.get(page), fields,
+                                  descriptions.size() == 1 ? FOOTER : FOOTER + " \u2022 page " + (page + 1) + "/" + descriptions.size(),
+                                  FOOTER_ICON, timestamp));
+        }
+        return pages;
+    }
+
+    /**
+     * Splits a text into pages of at most the given length
+     *
+     * @param text  the text to split, may be null
+     * @param limit the maximum length of a page
+     * @return the pages, at least one
+     */
+    static List<String> split(String text, int limit) {
+        List<String> pages = new ArrayList<>();
+        if (text == null || text.length() <= limit) {
+            pages.add(text);
+            return pages;
+        }
+        //Space for closing and reopening a code block
+        int usable = limit - 2 * CODE_BLOCK.length() - 1;
+        StringBuilder page = new StringBuilder();
+        boolean inCode = false;
+        int start = 0;
+        while (start < text.length()) {
+            int end = nextBreak(text, start);
+            if (end - start > usable) end = cut(text, start + usable);
+            if (page.length() > 0 && page.length() + (end - start) > usable) {
+                pages.add(closePage(page, inCode));
+                page.setLength(0);
+                if (inCode) page.append(CODE_BLOCK).append('\n');
+            }
+            for (int i = text.indexOf(CODE_BLOCK, start); i >= 0 && i + CODE_BLOCK.length() <= end; i = text.indexOf(CODE_BLOCK, i + CODE_BLOCK.length())) {
+                inCode = !inCode;
+            }
+            page.append(text, start, end);
+            start = end;
+        }
+        if (page.length() > 0) pages.add(page.toString());
+        return pages;
+    }
+
+    /**
+     * @return the position after the next line break or list separator
+     */
+    private static int nextBreak(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') return i + 1;
+            if (c == ',' && i + 1 < text.length() && text.charAt(i + 1) == ' ') return i + 2;
+        }
+        return text.length();
+    }
+
+    /**
+     * Moves a forced cut in front of a code block fence or a surrogate pair it would split
+     */
+    private static int cut(String text, int end) {
+        for (int i = Math.max(0, end - CODE_BLOCK.length() + 1); i < end; i++) {
+            if (text.startsWith(CODE_BLOCK, i) && i + CODE_BLOCK.length() > end) return i;
+        }
+        if (Character.isHighSurrogate(text.charAt(end - 1))) return end - 1;
+        return end;
+    }
+
+    private static String closePage(StringBuilder page, boolean inCode) {
+        String content = page.toString();
+        if (content.endsWith(", ")) content = content.substring(0, content.length() - 2);
+        return inCode ? content + CODE_BLOCK : content;
+    }
+
+    private static String truncate(String string, int length) {
+        if (string == null || string.length() <= length) return string;
+        return string.substring(0, length - 1) + "\u2026";
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.ungefroren.discord.BetonHelper.metrics.LatencyHistogram;
+
+/**
+ * Renews the long living resources of the bot while it keeps running.
+ * <p>
+ * The bot used to exit every night to get rid of stale connections and threads, which left it deaf until the JVM
+ * was started, logged in and synchronized again. Instead each registered resource is now replaced one after another
+ * while the bot keeps answering from the current snapshot.
+ */
+public class LifecycleManager {
+
+    private final Map<String, Runnable> resources = new LinkedHashMap<>();
+    private final LatencyHistogram durations = new LatencyHistogram();
+
+    /**
+     * Registers a resource that is renewed on each recycle, in the order of registration
+     *
+     * @param name    the name of the resource used in the log
+     * @param recycle replaces the resource
+     */
+    public synchronized void register(String name, Runnable recycle) {
+        resources.put(name, recycle);
+    }
+
+    /**
+     * Recycles all resources every day at the given time
+     *
+     * @param executor the executor the recycling runs on
+     * @param time     the time of the day
+     */
+    public void scheduleDaily(ScheduledExecutorService executor, LocalTime time) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.with(time);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        executor.schedule(() -> {
+            recycle();
+            if (!executor.isShutdown()) scheduleDaily(executor, time);
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recycles all registered resources, a resource that fails is logged and skipped
+     *
+     * @return how long recycling took in milliseconds
+     */
+    public synchronized long recycle() {
+        BetonHelperBot.log.info("Recycling " + resources.size() + " resources...");
+        long start = System.nanoTime();
+        for (Map.Entry<String, Runnable> resource : resources.entrySet()) {
+            long resourceStart = System.nanoTime();
+            try {
+                resource.getValue().run();
+                BetonHelperBot.log.info("Recycled " + resource.getKey() + " in "
+                                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resourceStart) + "ms");
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while recycling " + resource.getKey() + ":", e);
+            }
+            if (Thread.currentThread().isInterrupted()) break;
+        }
+        long duration = System.nanoTime() - start;
+        durations.record(duration);
+        BetonHelperBot.log.info("Recycling completed in " + TimeUnit.NANOSECONDS.toMillis(duration) + "ms");
+        return TimeUnit.NANOSECONDS.toMillis(duration);
+    }
+
+    /**
+     * @return the durations of all recycles
+     */
+    public LatencyHistogram getDurations() {
+        return durations;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Decides which of the received messages are meant for the bot.
+ * <p>
+ * The bot receives every message of every guild it is in, but only answers private messages and messages that
+ * mention it. The checks are ordered from cheap to expensive: the author and channel type are checked first, then
+ * the raw content is searched for the mention token of the bot. Only messages that contain the token are checked
+ * with {@link Message#getMentionedUsers()}, which has to resolve the mentioned entities.
+ */
+public class MessageFilter {
+
+    private final long selfUserId;
+    private final String mention, nicknameMention;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejectedOwn = new LongAdder();
+    private final LongAdder rejectedNotMentioned = new LongAdder();
+
+    /**
+     * @param selfUserId the id of the bot account
+     */
+    public MessageFilter(long selfUserId) {
+        this.selfUserId = selfUserId;
+        this.mention = "<@" + selfUserId + ">";
+        this.nicknameMention = "<@!" + selfUserId + ">";
+    }
+
+    /**
+     * Checks if the bot should answer a message and counts the result
+     *
+     * @param event the event of the received message
+     * @return if the message is meant for the bot
+     */
+    public boolean accept(MessageReceivedEvent event) {
+        if (event.getAuthor().getIdLong() == selfUserId) {
+            rejectedOwn.increment();
+            return false;
+        }
+        if (event.getChannelType() == ChannelType.PRIVATE || isMentioned(event.getMessage())) {
+            accepted.increment();
+            return true;
+        }
+        rejectedNotMentioned.increment();
+        return false;
+    }
+
+    private boolean isMentioned(Message message) {
+        String content = message.getContentRaw();
+        if (!content.contains(mention) && !content.contains(nicknameMention)) return false;
+        for (User user : message.getMentionedUsers()) {
+            if (user.getIdLong() == selfUserId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of messages that were accepted
+     */
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return the number of messages that were rejected because the bot sent them itself
+     */
+    public long getRejectedOwn() {
+        return rejectedOwn.sum();
+    }
+
+    /**
+     * @return the number of guild messages that were rejected because they don't mention the bot
+     */
+    public long getRejectedNotMentioned() {
+        return rejectedNotMentioned.sum();
+    }
+
+    /**
+     * @return the number of messages that were rejected for any reason
+     */
+    public long getRejected() {
+        return rejectedOwn.sum() + rejectedNotMentioned.sum();
+    }
+}
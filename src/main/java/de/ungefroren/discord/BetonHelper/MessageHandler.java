@@ -0,0 +1,119 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import de.ungefroren.discord.BetonHelper.metrics.LatencyHistogram;
+import de.ungefroren.discord.BetonHelper.transport.InboundMessage;
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+import de.ungefroren.discord.BetonHelper.wiki.Answer;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.QueryCache;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+
+/**
+ * Answers messages that are meant for the bot, no matter how they were received.
+ */
+public class MessageHandler {
+
+    private final Function<InboundMessage, KnowledgeSnapshot> snapshots;
+    private final Supplier<String> selfUserName;
+    private final EmbedCache embeds;
+    private final ReplyThrottle throttle;
+    private final QueryCache queryCache = new QueryCache();
+    private final LatencyHistogram findTipLatency = new LatencyHistogram();
+
+    /**
+     * Creates a handler that answers every message without limits
+     *
+     * @param snapshots    supplies the currently published snapshot of the knowledge database
+     * @param selfUserName supplies the lowercase name of the bot account
+     * @param embeds       the rendered pages of the tips
+     */
+    public MessageHandler(Supplier<KnowledgeSnapshot> snapshots, Supplier<String> selfUserName, EmbedCache embeds) {
+        this(snapshots, selfUserName, embeds, null);
+    }
+
+    /**
+     * @param snapshots    supplies the currently published snapshot of the knowledge database
+     * @param selfUserName supplies the lowercase name of the bot account
+     * @param embeds       the rendered pages of the tips
+     * @param throttle     limits the replies or null to answer every message immediately
+     */
+    public MessageHandler(Supplier<KnowledgeSnapshot> snapshots, Supplier<String> selfUserName, EmbedCache embeds,
+                          ReplyThrottle throttle) {
+        this(message -> snapshots.get(), selfUserName, embeds, throttle);
+    }
+
+    /**
+     * @param snapshots    selects the snapshot of the knowledge database that answers a message, e.g. by the version
+     *                     of the wiki the message asks for
+     * @param selfUserName supplies the lowercase name of the bot account
+     * @param embeds       the rendered pages of the tips
+     * @param throttle     limits the replies or null to answer every message immediately
+     */
+    public MessageHandler(Function<InboundMessage, KnowledgeSnapshot> snapshots, Supplier<String> selfUserName,
+                          EmbedCache embeds, ReplyThrottle throttle) {
+        this.snapshots = snapshots;
+        this.selfUserName = selfUserName;
+        this.embeds = embeds;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Finds the answer to a message and sends it, unless the throttle drops or delays it
+     *
+     * @param message the message to answer
+     * @return the answer or null if no tip was found
+     */
+    public Answer handle(InboundMessage message) {
+        KnowledgeSnapshot snapshot = snapshots.apply(message);
+        long start = System.nanoTime();
+        Tip tip = queryCache.findTip(snapshot, message.getContent(), selfUserName.get());
+        findTipLatency.recordSince(start);
+        if (tip == null) {
+            BetonHelperBot.log.warn("Could not find tip for the following message: " + message);
+            return null;
+        }
+        Answer answer = new Answer(tip, snapshot);
+        List<TipPage> pages = embeds.get(answer);
+        if (throttle == null) {
+            message.reply(pages);
+        } else {
+            throttle.reply(message, tip, pages);
+        }
+        return answer;
+    }
+
+    /**
+     * @return the cache of the tips that answered recent messages
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @return the durations of searching the tips that answer messages
+     */
+    public LatencyHistogram getFindTipLatency() {
+        return findTipLatency;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import de.ungefroren.discord.BetonHelper.metrics.LatencyHistogram;
+import de.ungefroren.discord.BetonHelper.transport.InboundMessage;
+
+/**
+ * Answers messages on a bounded pool of worker threads, so a slow answer never blocks the event thread of a shard.
+ * <p>
+ * Messages wait in a bounded queue for a free worker. If the queue is full the {@link Shedding} policy decides which
+ * message is not answered, messages that waited longer than the maximum wait time are not answered either because
+ * the requester has most likely given up.
+ */
+public class MessageWorkers {
+
+    /**
+     * What happens to a message that arrives while the queue is full
+     */
+    public enum Shedding {
+        /**
+         * The new message is not answered
+         */
+        DROP_NEWEST,
+        /**
+         * The message that waited longest is not answered and the new one is queued
+         */
+        DROP_OLDEST,
+        /**
+         * The new message is answered on the event thread, which slows down receiving further events
+         */
+        CALLER_RUNS
+    }
+
+    private final Consumer<InboundMessage> handler;
+    private final ThreadPoolExecutor executor;
+    private final Shedding shedding;
+    private final long maxWait;
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LongAdder shedQueueFull = new LongAdder();
+    private final LongAdder shedExpired = new LongAdder();
+
+    /**
+     * Creates workers configured by the system properties {@code betonhelper.workers.*}
+     *
+     * @param handler answers a message
+     */
+    public MessageWorkers(Consumer<InboundMessage> handler) {
+        this(handler, Integer.getInteger("betonhelper.workers.threads", Math.max(2, Runtime.getRuntime().availableProcessors())),
+             Integer.getInteger("betonhelper.workers.queue", 512),
+             Shedding.valueOf(System.getProperty("betonhelper.workers.shedding", "drop_oldest").toUpperCase(Locale.ROOT)),
+             Long.getLong("betonhelper.workers.maxWait", 30000),
+             threadFactory(Boolean.getBoolean("betonhelper.workers.virtual")));
+    }
+
+    /**
+     * @param handler       answers a message
+     * @param threads       the maximum number of messages that are answered at the same time
+     * @param queueCapacity the maximum number of messages that wait for a worker
+     * @param shedding      what happens to messages that arrive while the queue is full
+     * @param maxWait       the time in milliseconds after which a waiting message is not answered anymore, 0 to
+     *                      answer all messages
+     * @param threadFactory creates the worker threads
+     */
+    public MessageWorkers(Consumer<InboundMessage> handler, int threads, int queueCapacity, Shedding shedding,
+                          long maxWait, ThreadFactory threadFactory) {
+        this.handler = handler;
+        this.shedding = shedding;
+        this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                               new ArrayBlockingQueue<>(queueCapacity), threadFactory, this::reject);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Uses virtual threads if they are requested and the JVM supports them (Java 21 or newer)
+     */
+    private static ThreadFactory threadFactory(boolean virtual) {
+        if (virtual) {
+            try {
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "MessageWorker-", 1L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                BetonHelperBot.log.warn("Virtual threads are not supported by this JVM, using platform threads");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "MessageWorker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Queues a message to be answered by a worker, returns immediately
+     *
+     * @param message the message to answer
+     */
+    public void submit(InboundMessage message) {
+        executor.execute(new Task(message));
+    }
+
+    /**
+     * Applies the shedding policy to a message that did not fit into the queue
+     */
+    private void reject(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) return;
+        switch (shedding) {
+            case DROP_NEWEST:
+                shed(task);
+                break;
+            case DROP_OLDEST:
+                //Other threads may fill the queue again, so the oldest message is removed until the new one fits
+                while (!executor.getQueue().offer(task)) {
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest != null) shed(oldest);
+                }
+                break;
+            case CALLER_RUNS:
+                task.run();
+                break;
+        }
+    }
+
+    private void shed(Runnable task) {
+        shedQueueFull.increment();
+        BetonHelperBot.log.debug("Not answering " + ((Task) task).message + ", all workers are busy");
+    }
+
+    /**
+     * Stops accepting messages and waits until the queued ones are answered
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public void shutdown(long timeout) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                BetonHelperBot.log.warn(executor.getQueue().size() + " messages were not answered before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages that wait for a worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of messages that are answered at the moment
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the time messages waited in the queue until a worker took them
+     */
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return the number of messages that were not answered because the queue was full
+     */
+    public long getShedQueueFull() {
+        return shedQueueFull.sum();
+    }
+
+    /**
+     * @return the number of messages that were not answered because they waited too long
+     */
+    public long getShedExpired() {
+        return shedExpired.sum();
+    }
+
+    /**
+     * A queued message
+     */
+    private final class Task implements Runnable {
+
+        private final InboundMessage message;
+        private final long queued = System.nanoTime();
+
+        Task(InboundMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            long waited = System.nanoTime() - queued;
+            waitTime.record(waited);
+            if (maxWait > 0 && waited > maxWait) {
+                shedExpired.increment();
+                BetonHelperBot.log.debug("Not answering " + message + ", it waited " + TimeUnit.NANOSECONDS.toMillis(waited) + "ms");
+                return;
+            }
+            try {
+                handler.accept(message);
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while answering " + message + ":", e);
+            }
+        }
+    }
+}
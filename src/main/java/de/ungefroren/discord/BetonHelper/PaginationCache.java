@@ -0,0 +1,126 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+
+/**
+ * Remembers which page of a multi page answer is currently shown, so users can turn the pages with reactions.
+ * <p>
+ * The cache holds at most a fixed number of messages and forgets messages that were not used for some time.
+ */
+public class PaginationCache {
+
+    /**
+     * The reactions that turn to the previous or next page
+     */
+    public static final String PREVIOUS_PAGE = "\u25C0", NEXT_PAGE = "\u25B6";
+
+    private final int maxEntries;
+    private final long expireAfter;
+    private final LinkedHashMap<Long, Pagination> entries;
+
+    /**
+     * @param maxEntries  the maximum number of messages that are remembered, the least recently used ones are
+     *                    forgotten first
+     * @param expireAfter the time in milliseconds after which a message that wasn't used is forgotten
+     */
+    public PaginationCache(int maxEntries, long expireAfter) {
+        this.maxEntries = maxEntries;
+        this.expireAfter = expireAfter;
+        this.entries = new LinkedHashMap<Long, Pagination>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Pagination> eldest) {
+                return size() > PaginationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Remembers the pages of a message that shows the first page
+     *
+     * @param messageId the id of the message
+     * @param pages     all pages of the answer
+     */
+    public synchronized void put(long messageId, List<TipPage> pages) {
+        expire();
+        entries.put(messageId, new Pagination(pages, System.currentTimeMillis() + expireAfter));
+    }
+
+    /**
+     * Turns the page of a message
+     *
+     * @param messageId the id of the message
+     * @param delta     how many pages to turn, negative values turn back
+     * @return the page that should be shown now or null if the message is unknown or the page doesn't exist
+     */
+    public synchronized TipPage turn(long messageId, int delta) {
+        expire();
+        Pagination pagination = entries.get(messageId);
+        if (pagination == null) return null;
+        int page = pagination.page + delta;
+        if (page < 0 || page >= pagination.pages.size()) return null;
+        pagination.page = page;
+        pagination.expires = System.currentTimeMillis() + expireAfter;
+        return pagination.pages.get(page);
+    }
+
+    /**
+     * Forgets all messages that were not used for too long
+     */
+    public synchronized void removeExpired() {
+        expire();
+    }
+
+    /**
+     * @return the number of messages that are currently remembered
+     */
+    public synchronized int size() {
+        expire();
+        return entries.size();
+    }
+
+    /**
+     * Removes expired messages, starting with the least recently used ones
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        Iterator<Pagination> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expires > now) break;
+            iterator.remove();
+        }
+    }
+
+    private static class Pagination {
+
+        private final List<TipPage> pages;
+        private int page = 0;
+        private long expires;
+
+        Pagination(List<TipPage> pages, long expires) {
+            this.pages = pages;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.ungefroren.discord.BetonHelper.transport.InboundMessage;
+import de.ungefroren.discord.BetonHelper.transport.TipPage;
+import de.ungefroren.discord.BetonHelper.utils.RateLimiter;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+
+/**
+ * Limits how many replies the bot sends, so spamming users can't use up the rate limits of discord.
+ * <p>
+ * Each user and each channel has a token bucket, requests of users without tokens are dropped. The first request
+ * for a tip in a channel is answered immediately, further requests for the same tip that arrive within a short
+ * window are collected and answered with a single reply that mentions all of them. A user that asks again within
+ * the window is only mentioned once.
+ */
+public class ReplyThrottle {
+
+    private final RateLimiter users;
+    private final RateLimiter channels;
+    private final long window;
+    private final ConcurrentHashMap<Key, Batch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder droppedUser = new LongAdder();
+    private final LongAdder droppedChannel = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Creates a throttle configured by the system properties {@code betonhelper.ratelimit.*}
+     */
+    public ReplyThrottle() {
+        this(new RateLimiter(Integer.getInteger("betonhelper.ratelimit.user.burst", 3),
+                             Long.getLong("betonhelper.ratelimit.user.interval", 10000), TimeUnit.MILLISECONDS, 4096),
+             new RateLimiter(Integer.getInteger("betonhelper.ratelimit.channel.burst", 5),
+                             Long.getLong("betonhelper.ratelimit.channel.interval", 2000), TimeUnit.MILLISECONDS, 4096),
+             Long.getLong("betonhelper.ratelimit.coalesceWindow", 750));
+    }
+
+    /**
+     * @param users    the limiter for the requests of each user
+     * @param channels the limiter for the replies in each channel
+     * @param window   the time in milliseconds requests for the same tip are collected, 0 replies immediately
+     */
+    public ReplyThrottle(RateLimiter users, RateLimiter channels, long window) {
+        this.users = users;
+        this.channels = channels;
+        this.window = window;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReplyThrottle");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends a reply unless the user or channel exceeded its limit
+     *
+     * @param message the message to answer
+     * @param tip     the tip that answers the message
+     * @param pages   the pages of the tip
+     */
+    public void reply(InboundMessage message, Tip tip, List<TipPage> pages) {
+        if (!users.tryAcquire(message.getAuthorId())) {
+            droppedUser.increment();
+            return;
+        }
+        if (window <= 0) {
+            if (!channels.tryAcquire(message.getChannelId())) {
+                droppedChannel.increment();
+                return;
+            }
+            message.reply(pages);
+            return;
+        }
+        Key key = new Key(message.getChannelId(), tip);
+        Batch batch = new Batch(message, pages);
+        while (true) {
+            Batch existing = pending.putIfAbsent(key, batch);
+            if (existing == null) break;
+            if (existing.add(message)) return;
+            //The window of the other batch is over, it is replaced
+            pending.remove(key, existing);
+        }
+        //The token is only taken for a reply that is really sent
+        if (!channels.tryAcquire(message.getChannelId())) {
+            pending.remove(key, batch);
+            droppedChannel.increment();
+            batch.send();
+            return;
+        }
+        message.reply(pages);
+        scheduler.schedule(() -> {
+            pending.remove(key, batch);
+            batch.send();
+        }, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops collecting requests, the requests collected after a first reply are answered immediately
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (Key key : pending.keySet()) {
+            Batch batch = pending.remove(key);
+            if (batch != null) batch.send();
+        }
+    }
+
+    /**
+     * @return the number of requests that were dropped because the user sent too many
+     */
+    public long getDroppedUser() {
+        return droppedUser.sum();
+    }
+
+    /**
+     * @return the number of requests that were dropped because too many replies were sent in the channel
+     */
+    public long getDroppedChannel() {
+        return droppedChannel.sum();
+    }
+
+    /**
+     * @return the number of requests that were answered together with an earlier request for the same tip
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of requests that were ignored because the user was already waiting for the same tip
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Identifies requests for the same tip in the same channel, tips are compared by identity since different
+     * categories can contain tips with the same identifier
+     */
+    private static final class Key {
+
+        private final long channelId;
+        private final Tip tip;
+
+        Key(long channelId, Tip tip) {
+            this.channelId = channelId;
+            this.tip = tip;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return channelId == key.channelId && tip == key.tip;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(channelId) + System.identityHashCode(tip);
+        }
+    }
+
+    /**
+     * The requests for a tip in a channel within one window, the first one is answered immediately and the
+     * others together at the end of the window
+     */
+    private final class Batch {
+
+        private final List<InboundMessage> requesters = new ArrayList<>();
+        private final List<TipPage> pages;
+        private boolean sent = false;
+
+        Batch(InboundMessage first, List<TipPage> pages) {
+            this.requesters.add(first);
+            this.pages = pages;
+        }
+
+        /**
+         * @return false if the reply was already sent
+         */
+        synchronized boolean add(InboundMessage message) {
+            if (sent) return false;
+            for (InboundMessage requester : requesters) {
+                if (requester.getAuthorId() == message.getAuthorId()) {
+                    duplicates.increment();
+                    return true;
+                }
+            }
+            requesters.add(message);
+            coalesced.increment();
+            return true;
+        }
+
+        /**
+         * Closes the batch and answers the requests that arrived after the first one
+         */
+        void send() {
+            List<InboundMessage> collected;
+            synchronized (this) {
+                if (sent) return;
+                sent = true;
+                collected = requesters.subList(1, requesters.size());
+            }
+            if (collected.isEmpty()) return;
+            if (!channels.tryAcquire(collected.get(0).getChannelId())) {
+                droppedChannel.add(collected.size());
+                return;
+            }
+            collected.get(0).reply(pages, collected);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.metrics;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import de.ungefroren.discord.BetonHelper.MessageFilter;
+import de.ungefroren.discord.BetonHelper.MessageHandler;
+import de.ungefroren.discord.BetonHelper.MessageWorkers;
+import de.ungefroren.discord.BetonHelper.ReplyThrottle;
+import de.ungefroren.discord.BetonHelper.wiki.BetonWiki;
+import de.ungefroren.discord.BetonHelper.wiki.KnowledgeSnapshot;
+import de.ungefroren.discord.BetonHelper.wiki.SyncReport;
+import de.ungefroren.discord.BetonHelper.wiki.TipCategory;
+
+/**
+ * Registers the metrics of the bot's components and records the statistics of each wiki synchronization.
+ */
+public class BotMetrics {
+
+    private final MetricsRegistry registry;
+
+    /**
+     * @param registry     the registry the metrics are added to
+     * @param wiki         the wiki whose snapshots and synchronizations are measured
+     * @param handler      the handler that answers messages
+     * @param replyLatency the time from receiving a message until discord accepted the reply
+     * @param filter       supplies the filter that decides which messages are answered, null until the bot is ready
+     * @param throttle     the throttle that limits the replies
+     * @param workers      the workers that answer messages
+     */
+    public BotMetrics(MetricsRegistry registry, BetonWiki wiki, MessageHandler handler, LatencyHistogram replyLatency,
+                      Supplier<MessageFilter> filter, ReplyThrottle throttle, MessageWorkers workers) {
+        this.registry = registry;
+        registry.histogram("betonhelper_find_tip_seconds", "Time spent searching the tip that answers a message", "",
+                           handler.getFindTipLatency());
+        String lookups = "betonhelper_query_cache_lookups_total", lookupsHelp = "Searches of the tip that answers a message by the result of the cache";
+        registry.counter(lookups, lookupsHelp, MetricsRegistry.label("result", "hit"), handler.getQueryCache()::getHits);
+        registry.counter(lookups, lookupsHelp, MetricsRegistry.label("result", "miss"), handler.getQueryCache()::getMisses);
+        registry.gauge("betonhelper_query_cache_hit_ratio", "Share of messages answered from the cache", "",
+                       handler.getQueryCache()::getHitRatio);
+        registry.gauge("betonhelper_query_cache_size", "Messages remembered by the cache", "", handler.getQueryCache()::size);
+        registry.counter("betonhelper_query_cache_evictions_total", "Entries removed from the cache to make room for new ones",
+                         "", handler.getQueryCache()::getEvictions);
+        registry.histogram("betonhelper_reply_seconds", "Time from receiving a message until discord accepted the reply",
+                           "", replyLatency);
+
+        String messages = "betonhelper_messages_total", messagesHelp = "Received messages by the result of the filter";
+        registry.counter(messages, messagesHelp, MetricsRegistry.label("result", "accepted"),
+                         () -> count(filter.get(), MessageFilter::getAccepted));
+        registry.counter(messages, messagesHelp, MetricsRegistry.label("result", "own"),
+                         () -> count(filter.get(), MessageFilter::getRejectedOwn));
+        registry.counter(messages, messagesHelp, MetricsRegistry.label("result", "not_mentioned"),
+                         () -> count(filter.get(), MessageFilter::getRejectedNotMentioned));
+
+        String dropped = "betonhelper_replies_dropped_total", droppedHelp = "Requests that were not answered by the limit they exceeded";
+        registry.counter(dropped, droppedHelp, MetricsRegistry.label("limit", "user"), throttle::getDroppedUser);
+        registry.counter(dropped, droppedHelp, MetricsRegistry.label("limit", "channel"), throttle::getDroppedChannel);
+        registry.counter("betonhelper_replies_coalesced_total", "Requests answered together with an earlier request",
+                         "", throttle::getCoalesced);
+        registry.counter("betonhelper_replies_duplicate_total", "Requests ignored because the user already waited for the tip",
+                         "", throttle::getDuplicates);
+
+        registry.gauge("betonhelper_workers_queue_depth", "Messages waiting for a free worker", "",
+                       workers::getQueueDepth);
+        registry.gauge("betonhelper_workers_active", "Messages that are answered at the moment", "", workers::getActive);
+        registry.histogram("betonhelper_workers_wait_seconds", "Time messages waited for a free worker", "",
+                           workers.getWaitTime());
+        String shed = "betonhelper_messages_shed_total", shedHelp = "Messages that were not answered because the bot was overloaded";
+        registry.counter(shed, shedHelp, MetricsRegistry.label("reason", "queue_full"), workers::getShedQueueFull);
+        registry.counter(shed, shedHelp, MetricsRegistry.label("reason", "expired"), workers::getShedExpired);
+
+        registry.gauge("betonhelper_snapshot_version", "Version of the published knowledge snapshot", "",
+                       () -> wiki.getSnapshot().getVersion());
+        registry.gauge("betonhelper_snapshot_age_seconds", "Time since the wiki was last synchronized completely", "",
+                       () -> age(wiki.getSnapshot()));
+        registry.gauges("betonhelper_tips", "Number of tips of each category", () -> tipCounts(wiki.getSnapshot()));
+        wiki.addSyncListener(this::record);
+    }
+
+    private static long count(MessageFilter filter, ToLongFunction<MessageFilter> counter) {
+        return filter == null ? 0 : counter.applyAsLong(filter);
+    }
+
+    private static double age(KnowledgeSnapshot snapshot) {
+        ZonedDateTime timestamp = snapshot.getSynchronizedTimestamp();
+        return timestamp == null ? Double.NaN : Duration.between(timestamp, ZonedDateTime.now()).toMillis() / 1000.0;
+    }
+
+    private static Map<String, Integer> tipCounts(KnowledgeSnapshot snapshot) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (TipCategory category : snapshot.getCategories()) {
+            counts.put(MetricsRegistry.label("category", category.getIdentifier()), category.getSubTips().size());
+        }
+        return counts;
+    }
+
+    /**
+     * Records the statistics of a synchronization
+     *
+     * @param report the report of the synchronization
+     */
+    private void record(SyncReport report) {
+        registry.histogram("betonhelper_sync_seconds", "Duration of the wiki synchronization", "")
+                .record(TimeUnit.MILLISECONDS.toNanos(report.getDuration()));
+        for (SyncReport.Source source : report.getSourceReports()) {
+            String label = MetricsRegistry.label("source", source.getIdentifier());
+            registry.histogram("betonhelper_sync_download_seconds", "Duration of downloading a wiki page", label)
+                    .record(TimeUnit.MILLISECONDS.toNanos(source.getDownloadTime()));
+            registry.histogram("betonhelper_sync_parse_seconds", "Duration of parsing a wiki page", label)
+                    .record(source.getParseTime());
+            registry.counter("betonhelper_sync_bytes_total", "Bytes received while downloading wiki pages", label)
+                    .add(source.getBytesTransferred());
+            registry.counter("betonhelper_sync_results_total", "Downloads of wiki pages by their outcome",
+                             label + "," + MetricsRegistry.label("status", source.getStatus().name().toLowerCase()))
+                    .increment();
+        }
+    }
+}
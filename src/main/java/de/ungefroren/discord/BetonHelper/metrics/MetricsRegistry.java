@@ -0,0 +1,197 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds all metrics of the bot and writes them in the Prometheus text format.
+ * <p>
+ * Metrics are identified by their name and labels. Counters and histograms are created on first use, values that
+ * are already counted somewhere else can be registered as functions that are read when the metrics are scraped.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Formats a label for a metric
+     *
+     * @param name  the name of the label
+     * @param value the value of the label
+     * @return the label as used in the text format
+     */
+    public static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * Gets or creates a counter
+     *
+     * @param name   the name of the metric, should end with {@code _total}
+     * @param help   the description of the metric
+     * @param labels the labels of the counter, e.g. {@code source="events"}, or an empty string
+     * @return the counter
+     */
+    public synchronized LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").samples.computeIfAbsent(labels, l -> new LongAdder());
+    }
+
+    /**
+     * Registers a counter whose value is read from a function
+     *
+     * @param name   the name of the metric, should end with {@code _total}
+     * @param help   the description of the metric
+     * @param labels the labels of the counter or an empty string
+     * @param value  supplies the current value
+     */
+    public synchronized void counter(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "counter").samples.put(labels, value);
+    }
+
+    /**
+     * Registers a gauge whose value is read from a function
+     *
+     * @param name   the name of the metric
+     * @param help   the description of the metric
+     * @param labels the labels of the gauge or an empty string
+     * @param value  supplies the current value
+     */
+    public synchronized void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").samples.put(labels, value);
+    }
+
+    /**
+     * Registers gauges whose labels change over time, like the number of tips of each category
+     *
+     * @param name   the name of the metric
+     * @param help   the description of the metric
+     * @param values supplies the current values by their labels
+     */
+    public synchronized void gauges(String name, String help, Supplier<Map<String, ? extends Number>> values) {
+        family(name, help, "gauge").dynamic = values;
+    }
+
+    /**
+     * Gets or creates a histogram of durations, written as summary in seconds
+     *
+     * @param name   the name of the metric, should end with {@code _seconds}
+     * @param help   the description of the metric
+     * @param labels the labels of the histogram or an empty string
+     * @return the histogram
+     */
+    public synchronized LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "summary").samples.computeIfAbsent(labels, l -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers an existing histogram of durations
+     *
+     * @param name      the name of the metric, should end with {@code _seconds}
+     * @param help      the description of the metric
+     * @param labels    the labels of the histogram or an empty string
+     * @param histogram the histogram
+     */
+    public synchronized void histogram(String name, String help, String labels, LatencyHistogram histogram) {
+        family(name, help, "summary").samples.put(labels, histogram);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) throw new IllegalArgumentException(name + " is already registered as " + family.type);
+        return family;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format
+     *
+     * @return the metrics
+     */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> sample : family.samples.entrySet()) {
+                write(out, name, sample.getKey(), sample.getValue());
+            }
+            if (family.dynamic != null) {
+                for (Map.Entry<String, ? extends Number> sample : family.dynamic.get().entrySet()) {
+                    line(out, name, sample.getKey(), sample.getValue().doubleValue());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void write(StringBuilder out, String name, String labels, Object sample) {
+        if (sample instanceof LongAdder) {
+            line(out, name, labels, ((LongAdder) sample).sum());
+        } else if (sample instanceof LongSupplier) {
+            line(out, name, labels, ((LongSupplier) sample).getAsLong());
+        } else if (sample instanceof DoubleSupplier) {
+            line(out, name, labels, ((DoubleSupplier) sample).getAsDouble());
+        } else if (sample instanceof LatencyHistogram) {
+            LatencyHistogram histogram = (LatencyHistogram) sample;
+            String separator = labels.isEmpty() ? "" : labels + ",";
+            for (double quantile : QUANTILES) {
+                line(out, name, separator + "quantile=\"" + quantile + "\"",
+                     histogram.getValueAtQuantile(quantile) / NANOS_PER_SECOND);
+            }
+            line(out, name + "_sum", labels, histogram.getSum() / NANOS_PER_SECOND);
+            line(out, name + "_count", labels, histogram.getCount());
+        }
+    }
+
+    private static void line(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ');
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static class Family {
+
+        private final String help;
+        private final String type;
+        private final Map<String, Object> samples = new LinkedHashMap<>();
+        private Supplier<Map<String, ? extends Number>> dynamic;
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+import de.ungefroren.discord.BetonHelper.BetonHelperBot;
+
+/**
+ * Serves the metrics of a {@link MetricsRegistry} at {@code /metrics} so Prometheus can scrape them.
+ * <p>
+ * Maintenance actions can be added as triggers that are started with a {@code POST} request.
+ */
+public class MetricsServer {
+
+    private final HttpServer server;
+
+    /**
+     * Starts the server
+     *
+     * @param registry the metrics to serve
+     * @param host     the address to listen on
+     * @param port     the port to listen on
+     * @throws IOException if the port can't be opened
+     */
+    public MetricsServer(MetricsRegistry registry, String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", exchange -> {
+            try {
+                byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while collecting metrics:", e);
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        BetonHelperBot.log.info("Serving metrics on http://" + host + ":" + port + "/metrics");
+    }
+
+    /**
+     * Adds an action that is started by a {@code POST} request to the path, e.g. {@code curl -X POST host:port/sync}
+     *
+     * @param path   the path of the trigger
+     * @param action the action, it should return quickly and do the actual work on another thread
+     */
+    public void addTrigger(String path, Runnable action) {
+        server.createContext(path, exchange -> {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                action.run();
+                exchange.sendResponseHeaders(202, -1);
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while running trigger " + path + ":", e);
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
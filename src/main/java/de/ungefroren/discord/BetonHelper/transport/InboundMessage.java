@@ -0,0 +1,69 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.transport;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message the bot should answer, independent of where it was received.
+ */
+public interface InboundMessage {
+
+    /**
+     * @return the content of the message as the user sees it
+     */
+    String getContent();
+
+    /**
+     * @return the id of the author of the message
+     */
+    long getAuthorId();
+
+    /**
+     * @return the id of the channel the message was sent in
+     */
+    long getChannelId();
+
+    /**
+     * @return the id of the guild the message was sent in or 0 if it is a private message
+     */
+    long getGuildId();
+
+    /**
+     * @return the text that mentions the author in a reply
+     */
+    String getAuthorMention();
+
+    /**
+     * Sends the answer to the author of the message
+     *
+     * @param pages the pages of the answer, at least one
+     */
+    default void reply(List<TipPage> pages) {
+        reply(pages, Collections.singletonList(this));
+    }
+
+    /**
+     * Sends one answer to several messages that asked for the same in the channel of this message
+     *
+     * @param pages      the pages of the answer, at least one
+     * @param requesters the messages that are answered, including this one, all their authors are mentioned
+     */
+    void reply(List<TipPage> pages, List<? extends InboundMessage> requesters);
+}
@@ -0,0 +1,125 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.transport;
+
+import java.util.List;
+
+import de.ungefroren.discord.BetonHelper.PaginationCache;
+import de.ungefroren.discord.BetonHelper.metrics.LatencyHistogram;
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+import net.dv8tion.jda.core.EmbedBuilder;
+import net.dv8tion.jda.core.entities.MessageEmbed;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.exceptions.InsufficientPermissionException;
+
+/**
+ * A message received from discord.
+ * <p>
+ * The answer mentions the requesters and shows the first page as embed, answers with multiple pages get reactions
+ * to turn the pages.
+ */
+public class JdaMessage implements InboundMessage {
+
+    private final MessageReceivedEvent event;
+    private final PaginationCache paginations;
+    private final LatencyHistogram replyLatency;
+    private final long received = System.nanoTime();
+
+    /**
+     * @param event        the event of the received message
+     * @param paginations  the cache that remembers the pages of answers
+     * @param replyLatency records the time from receiving the message until discord accepted the reply
+     */
+    public JdaMessage(MessageReceivedEvent event, PaginationCache paginations, LatencyHistogram replyLatency) {
+        this.event = event;
+        this.paginations = paginations;
+        this.replyLatency = replyLatency;
+    }
+
+    @Override
+    public String getContent() {
+        return event.getMessage().getContentDisplay();
+    }
+
+    @Override
+    public long getAuthorId() {
+        return event.getAuthor().getIdLong();
+    }
+
+    @Override
+    public long getChannelId() {
+        return event.getChannel().getIdLong();
+    }
+
+    @Override
+    public long getGuildId() {
+        return event.getGuild() == null ? 0 : event.getGuild().getIdLong();
+    }
+
+    @Override
+    public String getAuthorMention() {
+        return event.getAuthor().getAsMention();
+    }
+
+    @Override
+    public void reply(List<TipPage> pages, List<? extends InboundMessage> requesters) {
+        StringBuilder mentions = new StringBuilder();
+        for (InboundMessage requester : requesters) {
+            if (mentions.length() > 0) mentions.append(' ');
+            mentions.append(requester.getAuthorMention());
+        }
+        try {
+            event.getChannel().sendMessage(mentions).embed(toEmbed(pages.get(0))).queue(message -> {
+                for (InboundMessage requester : requesters) {
+                    if (requester instanceof JdaMessage) replyLatency.recordSince(((JdaMessage) requester).received);
+                }
+                if (pages.size() == 1) return;
+                paginations.put(message.getIdLong(), pages);
+                message.addReaction(PaginationCache.PREVIOUS_PAGE)
+                        .queue(ignored -> message.addReaction(PaginationCache.NEXT_PAGE).queue());
+            });
+        } catch (InsufficientPermissionException ignored) {
+        }
+    }
+
+    /**
+     * Converts a page into a discord embed, the embed is built once per page and reused afterwards
+     *
+     * @param page the page to show
+     * @return the embed that shows the page
+     */
+    public static MessageEmbed toEmbed(TipPage page) {
+        return page.convert(MessageEmbed.class, JdaMessage::buildEmbed);
+    }
+
+    private static MessageEmbed buildEmbed(TipPage page) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setColor(page.getColor())
+                .setAuthor(page.getTitle())
+                .setDescription(page.getDescription())
+                .setFooter(page.getFooter(), page.getFooterIcon());
+        for (Tip.AdditionalInfo field : page.getFields()) embed.addField(field.getTitle(), field.getContent(), false);
+        if (page.getTimestamp() != null) embed.setTimestamp(page.getTimestamp());
+        return embed.build();
+    }
+
+    @Override
+    public String toString() {
+        return event.getMessage().toString();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.transport;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import de.ungefroren.discord.BetonHelper.MessageHandler;
+
+/**
+ * Delivers messages to the bot inside the same process, without a connection to discord.
+ * <p>
+ * Used to load test and profile the message handling. Each message remembers when it was sent and when it was
+ * answered, the answers are passed to a listener.
+ */
+public class LocalTransport {
+
+    private final MessageHandler handler;
+    private final Consumer<Message> replies;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param handler the handler that answers the messages
+     * @param replies called for each message that was answered, possibly from another thread
+     */
+    public LocalTransport(MessageHandler handler, Consumer<Message> replies) {
+        this.handler = handler;
+        this.replies = replies;
+    }
+
+    /**
+     * Delivers a message to the handler
+     *
+     * @param content the content of the message, each message has its own author and channel
+     * @param sentAt  the {@link System#nanoTime()} when the message was meant to be sent, so delays of the
+     *                sender count as latency as well
+     * @return the delivered message
+     */
+    public Message deliver(String content, long sentAt) {
+        long sequence = this.sequence.getAndIncrement();
+        Message message = new Message(sequence, content, sequence, sequence, sentAt);
+        handler.handle(message);
+        return message;
+    }
+
+    /**
+     * Delivers a message of a specific author and channel to the handler
+     *
+     * @param content   the content of the message
+     * @param authorId  the id of the author
+     * @param channelId the id of the channel
+     * @param sentAt    the {@link System#nanoTime()} when the message was meant to be sent
+     * @return the delivered message
+     */
+    public Message deliver(String content, long authorId, long channelId, long sentAt) {
+        Message message = new Message(sequence.getAndIncrement(), content, authorId, channelId, sentAt);
+        handler.handle(message);
+        return message;
+    }
+
+    /**
+     * A message delivered by a {@link LocalTransport}
+     */
+    public final class Message implements InboundMessage {
+
+        private final long sequence;
+        private final String content;
+        private final long authorId;
+        private final long channelId;
+        private final long sentAt;
+        private volatile long repliedAt = -1;
+        private volatile List<TipPage> pages;
+
+        private Message(long sequence, String content, long authorId, long channelId, long sentAt) {
+            this.sequence = sequence;
+            this.content = content;
+            this.authorId = authorId;
+            this.channelId = channelId;
+            this.sentAt = sentAt;
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public long getAuthorId() {
+            return authorId;
+        }
+
+        @Override
+        public long getChannelId() {
+            return channelId;
+        }
+
+        @Override
+        public long getGuildId() {
+            return 0;
+        }
+
+        @Override
+        public String getAuthorMention() {
+            return "<@" + authorId + ">";
+        }
+
+        @Override
+        public void reply(List<TipPage> pages, List<? extends InboundMessage> requesters) {
+            for (InboundMessage requester : requesters) {
+                if (requester instanceof Message) ((Message) requester).answered(pages);
+            }
+        }
+
+        private void answered(List<TipPage> pages) {
+            this.pages = pages;
+            this.repliedAt = System.nanoTime();
+            replies.accept(this);
+        }
+
+        /**
+         * @return the number of messages delivered by the transport before this one
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the pages of the answer or null if the message wasn't answered yet
+         */
+        public List<TipPage> getPages() {
+            return pages;
+        }
+
+        /**
+         * @return if the message was answered
+         */
+        public boolean isReplied() {
+            return repliedAt != -1;
+        }
+
+        /**
+         * @return the time in nanoseconds from sending the message until it was answered or -1 if it wasn't
+         */
+        public long getLatency() {
+            long replied = repliedAt;
+            return replied == -1 ? -1 : replied - sentAt;
+        }
+
+        @Override
+        public String toString() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.transport;
+
+import java.awt.Color;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import de.ungefroren.discord.BetonHelper.wiki.Tip;
+
+/**
+ * One rendered page of an answer, independent of how it is sent.
+ * <p>
+ * Pages are immutable, so they can be cached and shared between answers. Each transport converts them into its own
+ * format when it sends them, e.g. {@link JdaMessage} into discord embeds.
+ */
+public final class TipPage {
+
+    private final Color color;
+    private final String title;
+    private final String description;
+    private final List<Tip.AdditionalInfo> fields;
+    private final String footer;
+    private final String footerIcon;
+    private final ZonedDateTime timestamp;
+    private volatile Object converted;
+
+    /**
+     * @param color       the color of the page
+     * @param title       the title shown above the description, may be null
+     * @param description the text of the page, may be null
+     * @param fields      the additional information shown below the description
+     * @param footer      the text of the footer
+     * @param footerIcon  the url of the icon next to the footer, may be null
+     * @param timestamp   the timestamp shown in the footer or null
+     */
+    public TipPage(Color color, String title, String description, List<Tip.AdditionalInfo> fields, String footer,
+                   String footerIcon, ZonedDateTime timestamp) {
+        this.color = color;
+        this.title = title;
+        this.description = description;
+        this.fields = Collections.unmodifiableList(fields);
+        this.footer = footer;
+        this.footerIcon = footerIcon;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Copies the page with another timestamp, which is much cheaper than rendering it again
+     *
+     * @param timestamp the new timestamp or null
+     * @return the copy of this page
+     */
+    public TipPage withTimestamp(ZonedDateTime timestamp) {
+        return new TipPage(color, title, description, fields, footer, footerIcon, timestamp);
+    }
+
+    /**
+     * Converts the page into the format of a transport, the result is remembered so a page that is sent again
+     * (e.g. from the cache or when turning pages) is only converted once
+     * <p>
+     * Only one converted format is remembered, a page that is sent by different transports is converted again
+     * when the transport changes. Concurrent calls may both convert the page, the results must be equal.
+     *
+     * @param type      the type of the converted page
+     * @param converter converts the page, the result must be immutable
+     * @param <T>       the type of the converted page
+     * @return the converted page
+     */
+    public <T> T convert(Class<T> type, Function<TipPage, T> converter) {
+        Object result = converted;
+        if (type.isInstance(result)) return type.cast(result);
+        T fresh = converter.apply(this);
+        converted = fresh;
+        return fresh;
+    }
+
+    /**
+     * @return the color of the page
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * @return the title shown above the description or null
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the text of the page or null
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return a unmodifiable list of the additional information shown below the description
+     */
+    public List<Tip.AdditionalInfo> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the text of the footer
+     */
+    public String getFooter() {
+        return footer;
+    }
+
+    /**
+     * @return the url of the icon next to the footer or null
+     */
+    public String getFooterIcon() {
+        return footerIcon;
+    }
+
+    /**
+     * @return the timestamp shown in the footer or null
+     */
+    public ZonedDateTime getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable BK-tree for finding the keys that are most similar to a misspelled word.
+ * <p>
+ * The distance between two words is the number of insertions, deletions and substitutions of characters that are
+ * needed to turn one into the other (Levenshtein distance). The tree only visits the branches that can contain a key
+ * within the requested distance, so a lookup touches a small part of the keys.
+ * <p>
+ * The nodes are stored in flat arrays, each node's children are linked by sibling indices.
+ *
+ * @param <V> the type of the values stored with the keys
+ */
+public final class BKTree<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] distanceToParent;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private int size = 0;
+    private int maxKeyLength = 0;
+
+    /**
+     * Builds a tree containing all entries of the map
+     *
+     * @param entries the keys and their values, the keys should be lowercase
+     */
+    public BKTree(Map<String, ? extends V> entries) {
+        int capacity = entries.size();
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.distanceToParent = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        for (Map.Entry<String, ? extends V> entry : entries.entrySet()) add(entry.getKey(), entry.getValue());
+    }
+
+    private void add(String key, V value) {
+        int node = size++;
+        keys[node] = key;
+        values[node] = value;
+        maxKeyLength = Math.max(maxKeyLength, key.length());
+        if (node == 0) return;
+        int current = 0;
+        while (true) {
+            int distance = distance(key, keys[current]);
+            if (distance == 0) {
+                size--;
+                return;
+            }
+            int child = firstChild[current];
+            while (child != -1 && distanceToParent[child] != distance) child = nextSibling[child];
+            if (child == -1) {
+                distanceToParent[node] = distance;
+                nextSibling[node] = firstChild[current];
+                firstChild[current] = node;
+                return;
+            }
+            current = child;
+        }
+    }
+
+    /**
+     * Finds the key that is most similar to the given word
+     *
+     * @param word        the (lowercase) word to search for
+     * @param maxDistance the maximum distance between the word and the key
+     * @return the best match or null if no key is within the maximum distance
+     */
+    public Match<V> findBest(String word, int maxDistance) {
+        if (size == 0 || maxDistance < 0) return null;
+        int best = -1, bestDistance = maxDistance + 1;
+        int[] stack = new int[size];
+        int[] previous = new int[maxKeyLength + 1], current = new int[maxKeyLength + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int distance = distance(word, keys[node], previous, current);
+            if (distance < bestDistance || (distance == bestDistance && best != -1 && node < best)) {
+                best = node;
+                bestDistance = distance;
+            }
+            //Only children within the current search radius can contain a better match
+            int radius = Math.min(maxDistance, bestDistance);
+            for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+                if (Math.abs(distanceToParent[child] - distance) <= radius) stack[top++] = child;
+            }
+        }
+        if (best == -1) return null;
+        @SuppressWarnings("unchecked")
+        V value = (V) values[best];
+        return new Match<>(keys[best], value, bestDistance);
+    }
+
+    /**
+     * @return the number of keys in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calculates the Levenshtein distance between two words
+     *
+     * @param a the first word
+     * @param b the second word
+     * @return the number of edits needed to turn one word into the other
+     */
+    public static int distance(CharSequence a, CharSequence b) {
+        return distance(a, b, new int[b.length() + 1], new int[b.length() + 1]);
+    }
+
+    /**
+     * Calculates the Levenshtein distance between two words, using the given arrays as rows of the distance matrix
+     */
+    private static int distance(CharSequence a, CharSequence b, int[] previous, int[] current) {
+        int n = a.length(), m = b.length();
+        if (n == 0) return m;
+        if (m == 0) return n;
+        for (int j = 0; j <= m; j++) previous[j] = j;
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    /**
+     * A key of the tree that matched a word
+     *
+     * @param <V> the type of the value
+     */
+    public static final class Match<V> {
+
+        private final String key;
+        private final V value;
+        private final int distance;
+
+        Match(String key, V value, int distance) {
+            this.key = key;
+            this.value = value;
+            this.distance = distance;
+        }
+
+        /**
+         * @return the matching key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the value of the matching key
+         */
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * @return the distance between the word and the key
+         */
+        public int getDistance() {
+            return distance;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.ungefroren.discord.BetonHelper.BetonHelperBot;
+
+/**
+ * Downloads multiple files in parallel with a limited number of concurrent connections.
+ * <p>
+ * Each request has its own connect and read timeout and is retried with an exponential backoff if it fails.
+ * To be polite to the servers, only a limited number of requests to the same host run at the same time.
+ * <p>
+ * The download threads never wait: a request only gets a thread once its host has a free slot, and retries are
+ * scheduled instead of sleeping, so a slow host doesn't block the downloads from other hosts.
+ */
+public class DownloadPipeline {
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService retries;
+    private final int perHost;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxAttempts;
+    private final long backoff;
+
+    /**
+     * @param concurrency    the maximum number of downloads that run at the same time
+     * @param connectTimeout the connect timeout of each request in milliseconds
+     * @param readTimeout    the read timeout of each request in milliseconds
+     * @param maxAttempts    how often a download is tried before it counts as failed
+     * @param backoff        the delay before the first retry in milliseconds, doubled for each further retry
+     */
+    public DownloadPipeline(int concurrency, int connectTimeout, int readTimeout, int maxAttempts, long backoff) {
+        this(concurrency, concurrency, connectTimeout, readTimeout, maxAttempts, backoff);
+    }
+
+    /**
+     * @param concurrency    the maximum number of downloads that run at the same time
+     * @param perHost        the maximum number of downloads from the same host that run at the same time
+     * @param connectTimeout the connect timeout of each request in milliseconds
+     * @param readTimeout    the read timeout of each request in milliseconds
+     * @param maxAttempts    how often a download is tried before it counts as failed
+     * @param backoff        the delay before the first retry in milliseconds, doubled for each further retry
+     */
+    public DownloadPipeline(int concurrency, int perHost, int connectTimeout, int readTimeout, int maxAttempts,
+                            long backoff) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        if (perHost < 1) throw new IllegalArgumentException("perHost must be at least 1");
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+        this.executor = Executors.newFixedThreadPool(concurrency, new DownloadThreadFactory("wiki-download-"));
+        this.retries = Executors.newSingleThreadScheduledExecutor(new DownloadThreadFactory("wiki-download-retry-"));
+        this.perHost = perHost;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Starts a download in the background
+     *
+     * @param source the source to download
+     * @return a future that completes with the outcome of the download
+     */
+    public Future<FetchResult> fetch(HttpSource source) {
+        Host host = hosts.computeIfAbsent(source.getUrl().getHost(), h -> new Host());
+        Attempt attempt = new Attempt(host, source, new CompletableFuture<>(), System.currentTimeMillis(), 1, backoff);
+        host.submit(attempt);
+        return attempt.result;
+    }
+
+    /**
+     * Downloads all sources in parallel and waits until all of them are finished
+     *
+     * @param sources the sources to download
+     * @param timeout the maximum time in milliseconds to wait for all downloads
+     * @return the outcome of each download, in the order of the given sources
+     */
+    public Map<HttpSource, FetchResult> fetchAll(Collection<HttpSource> sources, long timeout) {
+        Map<HttpSource, Future<FetchResult>> running = new LinkedHashMap<>();
+        for (HttpSource source : sources) running.put(source, fetch(source));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Map<HttpSource, FetchResult> results = new LinkedHashMap<>();
+        for (Map.Entry<HttpSource, Future<FetchResult>> download : running.entrySet()) {
+            FetchResult result;
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                result = download.getValue().get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                BetonHelperBot.log.warn("Download of " + download.getKey() + " timed out");
+                download.getValue().cancel(true);
+                result = new FetchResult(FetchResult.Status.FAILED, 0);
+            } catch (ExecutionException e) {
+                BetonHelperBot.log.warn("Could not download " + download.getKey() + ": " + e.getCause().getMessage());
+                result = new FetchResult(FetchResult.Status.FAILED, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                download.getValue().cancel(true);
+                result = new FetchResult(FetchResult.Status.FAILED, 0);
+            }
+            results.put(download.getKey(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Stops all running downloads and releases the download threads
+     */
+    public void shutdown() {
+        retries.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Limits the number of requests to one host, requests without a free slot wait in a queue instead of a thread
+     */
+    private final class Host {
+
+        private final Queue<Attempt> waiting = new ArrayDeque<>();
+        private int running = 0;
+
+        void submit(Attempt attempt) {
+            synchronized (this) {
+                if (running >= perHost) {
+                    waiting.add(attempt);
+                    return;
+                }
+                running++;
+            }
+            execute(attempt);
+        }
+
+        /**
+         * Passes the slot of a finished request on to the next waiting one
+         */
+        void release() {
+            Attempt next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            execute(next);
+        }
+
+        private void execute(Attempt attempt) {
+            try {
+                executor.execute(attempt);
+            } catch (RejectedExecutionException e) {
+                attempt.result.complete(new FetchResult(FetchResult.Status.FAILED, 0));
+                release();
+            }
+        }
+    }
+
+    /**
+     * One try to download a source, schedules the next try if it fails
+     */
+    private final class Attempt implements Runnable {
+
+        private final Host host;
+        private final HttpSource source;
+        private final CompletableFuture<FetchResult> result;
+        private final long start;
+        private final int number;
+        private final long delay;
+
+        Attempt(Host host, HttpSource source, CompletableFuture<FetchResult> result, long start, int number, long delay) {
+            this.host = host;
+            this.source = source;
+            this.result = result;
+            this.start = start;
+            this.number = number;
+            this.delay = delay;
+        }
+
+        @Override
+        public void run() {
+            FetchResult fetched;
+            try {
+                //Downloads that were cancelled or timed out while waiting for a slot are not started anymore
+                if (result.isDone()) return;
+                fetched = URLHelper.fetch(source, connectTimeout, readTimeout);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            } finally {
+                host.release();
+            }
+            if (!fetched.isFailed() || number >= maxAttempts) {
+                result.complete(new FetchResult(fetched.getStatus(), fetched.getBytesTransferred(),
+                                                System.currentTimeMillis() - start, fetched.getContent()));
+                return;
+            }
+            BetonHelperBot.log.debug("Retrying download of " + source + " in " + delay + "ms (attempt " + (number + 1) + "/" + maxAttempts + ")");
+            Attempt next = new Attempt(host, source, result, start, number + 1, delay * 2);
+            try {
+                retries.schedule(() -> host.submit(next), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                result.complete(new FetchResult(FetchResult.Status.FAILED, 0));
+            }
+        }
+    }
+
+    private static class DownloadThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DownloadThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
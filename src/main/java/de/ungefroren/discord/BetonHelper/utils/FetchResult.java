@@ -0,0 +1,105 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+/**
+ * The outcome of fetching a {@link HttpSource}
+ */
+public class FetchResult {
+
+    public enum Status {
+        /**
+         * New content was downloaded and saved
+         */
+        MODIFIED,
+        /**
+         * The server answered that the content was not modified since the last download
+         */
+        NOT_MODIFIED,
+        /**
+         * The content was downloaded but its hash is the same as last time
+         */
+        UNCHANGED,
+        /**
+         * The content was not downloaded because its interval did not elapse since the last download
+         */
+        NOT_DUE,
+        /**
+         * The content could not be downloaded
+         */
+        FAILED
+    }
+
+    private final Status status;
+    private final long bytesTransferred;
+    private final long duration;
+    private final byte[] content;
+
+    public FetchResult(Status status, long bytesTransferred) {
+        this(status, bytesTransferred, 0, null);
+    }
+
+    public FetchResult(Status status, long bytesTransferred, long duration, byte[] content) {
+        this.status = status;
+        this.bytesTransferred = bytesTransferred;
+        this.duration = duration;
+        this.content = content;
+    }
+
+    /**
+     * @return the outcome of the request
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return how many bytes were received over the network (compressed)
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return how long the download took in milliseconds, including all retries
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the downloaded content (uncompressed) or null if nothing was downloaded
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return if the local file is up to date without needing to be processed again
+     */
+    public boolean isSkipped() {
+        return status == Status.NOT_MODIFIED || status == Status.UNCHANGED || status == Status.NOT_DUE;
+    }
+
+    /**
+     * @return if the content could not be downloaded
+     */
+    public boolean isFailed() {
+        return status == Status.FAILED;
+    }
+}
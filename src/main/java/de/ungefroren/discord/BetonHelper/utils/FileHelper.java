@@ -17,12 +17,10 @@
  */
 package de.ungefroren.discord.BetonHelper.utils;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import de.ungefroren.discord.BetonHelper.BetonHelperBot;
 
@@ -41,15 +39,23 @@ public class FileHelper {
      */
     public static String readToString(File file) {
         try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
-            StringBuilder string = new StringBuilder();
-            String l;
-            while ((l = br.readLine()) != null) string.append(l).append('\n');
-            br.close();
-            return string.toString();
+            return toText(Files.readAllBytes(file.toPath()));
         } catch (IOException e) {
             BetonHelperBot.log.warn("Could not read " + file.getName() + ": " + e.getMessage());
             return null;
         }
     }
+
+    /**
+     * Decodes UTF-8 text, all line separators are replaced by {@code \n} and the text always ends with one
+     *
+     * @param content the encoded text
+     * @return the decoded text
+     */
+    public static String toText(byte[] content) {
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (text.indexOf('\r') >= 0) text = text.replace("\r\n", "\n").replace('\r', '\n');
+        if (!text.isEmpty() && text.charAt(text.length() - 1) != '\n') text += '\n';
+        return text;
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.io.File;
+import java.net.URL;
+
+/**
+ * A remote file that is mirrored to a local file, remembering the validators of the last download
+ * so following requests can be sent conditionally.
+ */
+public class HttpSource {
+
+    private final URL url;
+    private final File file;
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile byte[] contentHash;
+
+    public HttpSource(URL url, File file) {
+        this.url = url;
+        this.file = file;
+    }
+
+    /**
+     * @return the url to download from
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the local file the content is saved to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the ETag header of the last download or null if there was none
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified header of the last download or null if there was none
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the SHA-256 hash of the last downloaded content or null if nothing was downloaded yet
+     */
+    public byte[] getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Updates the validators after a successful download
+     *
+     * @param etag         the ETag header of the response, may be null
+     * @param lastModified the Last-Modified header of the response, may be null
+     * @param contentHash  the SHA-256 hash of the downloaded content
+     */
+    void update(String etag, String lastModified, byte[] contentHash) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Restores the validators that were saved in a previous run of the bot
+     *
+     * @param etag         the saved ETag header, may be null
+     * @param lastModified the saved Last-Modified header, may be null
+     * @param contentHash  the saved SHA-256 hash of the local file
+     */
+    public void restore(String etag, String lastModified, byte[] contentHash) {
+        update(etag, lastModified, contentHash);
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable trie for finding all keys that start with a prefix.
+ * <p>
+ * The keys are sorted, so the keys below each node of the trie are a contiguous range of the sorted keys and each
+ * node only stores the bounds of its range. Finding the keys of a prefix walks one node per character of the
+ * prefix, no matter how many keys there are.
+ * <p>
+ * The nodes are stored in flat arrays, the children of a node are stored next to each other ordered by their
+ * character.
+ *
+ * @param <V> the type of the values stored with the keys
+ */
+public final class PrefixIndex<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] rangeStart;
+    private final int[] rangeEnd;
+    private int size = 1;
+
+    /**
+     * Builds an index containing all entries of the map
+     *
+     * @param entries the keys and their values, the keys should be lowercase
+     */
+    public PrefixIndex(Map<String, ? extends V> entries) {
+        keys = entries.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        values = new Object[keys.length];
+        int capacity = 1;
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = entries.get(keys[i]);
+            capacity += keys[i].length();
+        }
+        char[] labels = new char[capacity];
+        int[] firstChild = new int[capacity], childCount = new int[capacity];
+        int[] rangeStart = new int[capacity], rangeEnd = new int[capacity];
+        build(0, 0, keys.length, 0, labels, firstChild, childCount, rangeStart, rangeEnd);
+        this.labels = Arrays.copyOf(labels, size);
+        this.firstChild = Arrays.copyOf(firstChild, size);
+        this.childCount = Arrays.copyOf(childCount, size);
+        this.rangeStart = Arrays.copyOf(rangeStart, size);
+        this.rangeEnd = Arrays.copyOf(rangeEnd, size);
+    }
+
+    /**
+     * Creates the children of a node, all keys in the range share their first {@code depth} characters
+     */
+    private void build(int node, int from, int to, int depth, char[] labels, int[] firstChild, int[] childCount,
+                       int[] rangeStart, int[] rangeEnd) {
+        rangeStart[node] = from;
+        rangeEnd[node] = to;
+        //A key that ends at this node is sorted before all longer keys with the same prefix
+        int start = from;
+        while (start < to && keys[start].length() == depth) start++;
+        int children = 0;
+        for (int i = start; i < to; children++) i = groupEnd(i, to, depth);
+        firstChild[node] = size;
+        childCount[node] = children;
+        int child = size;
+        size += children;
+        for (int i = start; i < to; child++) {
+            int end = groupEnd(i, to, depth);
+            labels[child] = keys[i].charAt(depth);
+            build(child, i, end, depth + 1, labels, firstChild, childCount, rangeStart, rangeEnd);
+            i = end;
+        }
+    }
+
+    /**
+     * @return the end of the keys that have the same character at the depth as the key at the start
+     */
+    private int groupEnd(int start, int to, int depth) {
+        char c = keys[start].charAt(depth);
+        int end = start + 1;
+        while (end < to && keys[end].charAt(depth) == c) end++;
+        return end;
+    }
+
+    /**
+     * @return the node of the prefix or -1 if no key starts with it
+     */
+    private int find(String prefix) {
+        int node = 0;
+        for (int depth = 0; depth < prefix.length(); depth++) {
+            char c = prefix.charAt(depth);
+            int low = firstChild[node], high = low + childCount[node] - 1;
+            node = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (labels[middle] < c) {
+                    low = middle + 1;
+                } else if (labels[middle] > c) {
+                    high = middle - 1;
+                } else {
+                    node = middle;
+                    break;
+                }
+            }
+            if (node == -1) return -1;
+        }
+        return node;
+    }
+
+    /**
+     * Counts the keys that start with the prefix
+     *
+     * @param prefix the (lowercase) prefix
+     * @return the number of keys starting with the prefix, including the prefix itself
+     */
+    public int count(String prefix) {
+        int node = find(prefix);
+        return node == -1 ? 0 : rangeEnd[node] - rangeStart[node];
+    }
+
+    /**
+     * Finds the values of the keys that start with the prefix
+     * <p>
+     * Values that are stored with multiple keys are only returned once.
+     *
+     * @param prefix the (lowercase) prefix
+     * @param limit  the maximum number of values
+     * @return the distinct values in the order of their keys, at most {@code limit}
+     */
+    public List<V> complete(String prefix, int limit) {
+        int node = find(prefix);
+        if (node == -1) return new ArrayList<>(0);
+        List<V> completions = new ArrayList<>(Math.min(limit, rangeEnd[node] - rangeStart[node]));
+        for (int i = rangeStart[node]; i < rangeEnd[node] && completions.size() < limit; i++) {
+            @SuppressWarnings("unchecked")
+            V value = (V) values[i];
+            if (!completions.contains(value)) completions.add(value);
+        }
+        return completions;
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    public int size() {
+        return keys.length;
+    }
+}
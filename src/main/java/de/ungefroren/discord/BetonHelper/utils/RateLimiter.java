@@ -0,0 +1,73 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free token bucket rate limiter for many keys.
+ * <p>
+ * Each key may take up to {@code burst} tokens at once, one token is refilled per interval. Instead of counting
+ * tokens each bucket stores the time when it will be full again (generic cell rate algorithm), so a bucket is a
+ * single long that is updated with compare and set.
+ * <p>
+ * Keys are hashed onto a fixed number of stripes instead of having a bucket each, so the limiter never grows.
+ * Keys that share a stripe share their tokens, which only makes the limit stricter.
+ */
+public final class RateLimiter {
+
+    private final AtomicLongArray stripes;
+    private final int shift;
+    private final long interval;
+    private final long tolerance;
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param burst    the number of tokens a full bucket holds
+     * @param interval the time it takes to refill one token
+     * @param unit     the unit of the interval
+     * @param stripes  the number of buckets, rounded up to a power of two
+     */
+    public RateLimiter(int burst, long interval, TimeUnit unit, int stripes) {
+        if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+        int bits = stripes <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(stripes - 1);
+        this.stripes = new AtomicLongArray(1 << bits);
+        this.shift = 64 - bits;
+        this.interval = unit.toNanos(interval);
+        this.tolerance = this.interval * (burst - 1);
+    }
+
+    /**
+     * Takes a token from the bucket of a key
+     *
+     * @param key the key, e.g. the id of a user
+     * @return if a token was available
+     */
+    public boolean tryAcquire(long key) {
+        //Fibonacci hashing spreads consecutive ids over all stripes
+        int stripe = shift == 64 ? 0 : (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long full = stripes.get(stripe);
+            long start = Math.max(full, now);
+            if (start - now > tolerance) return false;
+            if (stripes.compareAndSet(stripe, full, start + interval)) return true;
+        }
+    }
+}
@@ -17,16 +17,26 @@
  */
 package de.ungefroren.discord.BetonHelper.utils;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import de.ungefroren.discord.BetonHelper.BetonHelperBot;
 
@@ -53,6 +63,10 @@ public class URLHelper {
         }
     }
 
+    private static final int
+            DEFAULT_CONNECT_TIMEOUT = 10000,//In milliseconds
+            DEFAULT_READ_TIMEOUT = 30000;//In milliseconds
+
     /**
      * Method that makes downloading files from a url easier
      *
@@ -61,20 +75,166 @@ public class URLHelper {
      * @return if the download was successful
      */
     public static boolean downloadToFile(URL url, File file) {
+        return downloadToFile(url, file, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Method that makes downloading files from a url easier
+     *
+     * @param url            url to download from
+     * @param file           where the content from the url should be saved
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout    the read timeout in milliseconds
+     * @return if the download was successful
+     */
+    public static boolean downloadToFile(URL url, File file, int connectTimeout, int readTimeout) {
+        return !fetch(new HttpSource(url, file), connectTimeout, readTimeout).isFailed();
+    }
+
+    /**
+     * Downloads a source to its local file.
+     * <p>
+     * The request accepts gzip and is sent conditionally if the source was downloaded before, so unchanged content
+     * doesn't need to be transferred or written again.
+     * <p>
+     * The content is streamed into a temporary file next to the local file and only moved over it once it was
+     * downloaded completely, so a failed download never leaves a truncated file behind.
+     *
+     * @param source         the source to download
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout    the read timeout in milliseconds
+     * @return the outcome of the download
+     */
+    public static FetchResult fetch(HttpSource source, int connectTimeout, int readTimeout) {
+        File file = source.getFile();
+        boolean local = file.exists();
+        URLConnection connection = null;
         try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8));
-            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
-            String l;
-            while ((l = br.readLine()) != null) {
-                bw.write(l);
-                bw.newLine();
+            connection = source.getUrl().openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (local && source.getEtag() != null) connection.setRequestProperty("If-None-Match", source.getEtag());
+            if (local && source.getLastModified() != null)
+                connection.setRequestProperty("If-Modified-Since", source.getLastModified());
+            if (connection instanceof HttpURLConnection) {
+                int code = ((HttpURLConnection) connection).getResponseCode();
+                if (code != HttpURLConnection.HTTP_OK) discard((HttpURLConnection) connection, code);
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && local) {
+                    return new FetchResult(FetchResult.Status.NOT_MODIFIED, 0);
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    BetonHelperBot.log.warn("Could not download " + source + ": HTTP " + code);
+                    return new FetchResult(FetchResult.Status.FAILED, 0);
+                }
+            }
+            CountingInputStream raw = new CountingInputStream(connection.getInputStream());
+            boolean gzip = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+            long expected = connection.getContentLengthLong();
+            MessageDigest digest = sha256();
+            Path target = file.toPath().toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), file.getName(), ".part");
+            byte[] content;
+            try {
+                try (InputStream in = gzip ? new GZIPInputStream(raw) : raw;
+                     FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    content = transfer(in, out, digest, gzip ? -1 : expected);
+                    out.force(false);
+                }
+                //A gzip stream verifies its own length and checksum, otherwise only the length can be checked
+                if (!gzip && expected >= 0 && expected != content.length) {
+                    throw new IOException("Incomplete download, received " + content.length + " of " + expected + " bytes");
+                }
+                byte[] hash = digest.digest();
+                String etag = connection.getHeaderField("ETag"), lastModified = connection.getHeaderField("Last-Modified");
+                if (local && Arrays.equals(hash, source.getContentHash())) {
+                    source.update(etag, lastModified, hash);
+                    return new FetchResult(FetchResult.Status.UNCHANGED, raw.count, 0, content);
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                source.update(etag, lastModified, hash);
+                return new FetchResult(FetchResult.Status.MODIFIED, raw.count, 0, content);
+            } finally {
+                Files.deleteIfExists(temp);
             }
-            br.close();
-            bw.close();
-            return true;
         } catch (IOException e) {
-            BetonHelperBot.log.warn("Could not download " + url.toString() + ": " + e.getMessage());
-            return false;
+            BetonHelperBot.log.warn("Could not download " + source + ": " + e.getMessage());
+            //The state of the connection is unknown, so it must not be reused
+            if (connection instanceof HttpURLConnection) ((HttpURLConnection) connection).disconnect();
+            return new FetchResult(FetchResult.Status.FAILED, 0);
+        }
+    }
+
+    /**
+     * Reads the remaining body of a response that is not used, so the connection can be kept alive and reused
+     *
+     * @param code the status code of the response
+     */
+    private static void discard(HttpURLConnection connection, int code) {
+        try (InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            if (in == null) return;
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) ;
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Streams the content into a file while hashing it and keeping a copy in memory
+     *
+     * @param sizeHint the expected size or -1 if unknown
+     * @return the content that was transferred
+     */
+    private static byte[] transfer(InputStream in, FileChannel out, MessageDigest digest, long sizeHint) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(sizeHint > 0 && sizeHint < Integer.MAX_VALUE ? (int) sizeHint : 8192);
+        byte[] buffer = new byte[8192];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            content.write(buffer, 0, read);
+            wrapped.clear().limit(read);
+            while (wrapped.hasRemaining()) out.write(wrapped);
+        }
+        return content.toByteArray();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Counts the bytes that are read from the wrapped stream
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
         }
     }
 }
@@ -0,0 +1,53 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+/**
+ * The answer to a message, containing the tip and the snapshot it was taken from
+ */
+public final class Answer {
+
+    private final Tip tip;
+    private final KnowledgeSnapshot snapshot;
+
+    public Answer(Tip tip, KnowledgeSnapshot snapshot) {
+        this.tip = tip;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return the tip that answers the message
+     */
+    public Tip getTip() {
+        return tip;
+    }
+
+    /**
+     * @return the snapshot the tip was taken from
+     */
+    public KnowledgeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the version of the snapshot the tip was taken from
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+}
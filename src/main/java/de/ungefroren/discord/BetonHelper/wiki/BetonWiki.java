@@ -18,18 +18,24 @@
 package de.ungefroren.discord.BetonHelper.wiki;
 
 import java.io.File;
-import java.net.URL;
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.StringJoiner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import de.ungefroren.discord.BetonHelper.BetonHelperBot;
+import de.ungefroren.discord.BetonHelper.utils.DownloadPipeline;
+import de.ungefroren.discord.BetonHelper.utils.FetchResult;
 import de.ungefroren.discord.BetonHelper.utils.FileHelper;
-import de.ungefroren.discord.BetonHelper.utils.URLHelper;
+import de.ungefroren.discord.BetonHelper.utils.HttpSource;
 
 /**
  * Contains all knowledge data for the helper bot and synchronizes it from the wiki
@@ -40,43 +46,18 @@ import de.ungefroren.discord.BetonHelper.utils.URLHelper;
  */
 public class BetonWiki {
 
-    private static final URL
-            REFERENCE_RAW_URL = URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/Reference.md"),
-            EVENTS_LIST_RAW_URL = URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/Events-List.md"),
-            CONDITIONS_LIST_RAW_URL = URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/Conditions-List.md"),
-            OBJECTIVES_LIST_RAW_URL = URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/Objectives-List.md"),
-            VARIABLES_LIST_RAW_URL = URLHelper.create("https://raw.githubusercontent.com/wiki/Co0sh/BetonQuest/Variables-List.md");
-
-    private static final String
-            EVENTS_LIST_BASE_URL = "https://github.com/Co0sh/BetonQuest/wiki/Events-List",
-            CONDITIONS_LIST_BASE_URL = "https://github.com/Co0sh/BetonQuest/wiki/Conditions-List",
-            OBJECTIVES_LIST_BASE_URL = "https://github.com/Co0sh/BetonQuest/wiki/Objectives-List",
-            VARIABLES_LIST_BASE_URL = "https://github.com/Co0sh/BetonQuest/wiki/Variables-List";
-
-    private static final File
-            REFERENCE_FILE = new File("Reference.md"),
-            EVENTS_LIST_FILE = new File("Events-List.md"),
-            CONDITIONS_LIST_FILE = new File("Conditions-List.md"),
-            OBJECTIVES_LIST_FILE = new File("Objectives-List.md"),
-            VARIABLES_LIST_FILE = new File("Variables-List.md");
-
-    private static final Pattern
-            //Match a events description, group 1 is the title, group 2 the identifier, group 3 could be modifiers
-            // (static/peristent) and group 4 is the description
-            EVENTS_REGEX = Pattern.compile(
-            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t]*(_[^\\n]+_)?[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$"),
-    //Match a conditions description, group 1 is the title, group 2 the identifier, group 3 could be modifiers
-    // (static/peristent) and group 4 is the description
-    CONDITIONS_REGEX = Pattern.compile(
-            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t]*(_[^\\n]+_)?[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$"),
-    //Match a objectives description, group 1 is the title, group 2 the identifier, group 3 could be modifiers
-    // (static/peristent) and group 4 is the description
-    OBJECTIVES_REGEX = Pattern.compile(
-            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t]*(_[^\\n]+_)?[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$"),
-    //Match a variables description, group 1 is the title, group 2 the identifier and group 3 is the description
-    VARIABLES_REGEX = Pattern.compile(
-            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$");
-
+    private static final int
+            DOWNLOAD_CONCURRENCY = Integer.getInteger("betonhelper.download.concurrency", 4),
+            DOWNLOAD_PER_HOST = Integer.getInteger("betonhelper.download.perHost", DOWNLOAD_CONCURRENCY),
+            DOWNLOAD_CONNECT_TIMEOUT = Integer.getInteger("betonhelper.download.connectTimeout", 10000),//In milliseconds
+            DOWNLOAD_READ_TIMEOUT = Integer.getInteger("betonhelper.download.readTimeout", 30000),//In milliseconds
+            DOWNLOAD_ATTEMPTS = Integer.getInteger("betonhelper.download.attempts", 3);
+    private static final long
+            DOWNLOAD_BACKOFF = Long.getLong("betonhelper.download.backoff", 2000),//In milliseconds
+            DOWNLOAD_TIMEOUT = Long.getLong("betonhelper.download.timeout", 120000);//In milliseconds, for all sources together
+    private static final File SNAPSHOT_FILE = new File(System.getProperty("betonhelper.snapshot.file", "knowledge.bin"));
+    private static final File SOURCES_FILE = new File(System.getProperty("betonhelper.sources.file", "sources.properties"));
+    private static final FetchResult NOT_DUE = new FetchResult(FetchResult.Status.NOT_DUE, 0);
 
     private final Tip help = new Tip("Need help with the bot?",
                                      "This bot is able to show you the descriptions of all events, conditions objectives and" +
@@ -90,235 +71,387 @@ public class BetonWiki {
                                              "textchannels if you are working privately.\n" +
                                              "**Now have fun!** :blush:",
                                      "help");
-    private HashMap<String, Tip> tips;
-    private ZonedDateTime synchronized_timestamp = null;
+    private final SourceRegistry registry;
+    private List<WikiSource> sources;
+    private final List<WikiVersion> versions;
+    private final Map<WikiVersion, SnapshotStore> versionStores = new HashMap<>();
+    private DownloadPipeline downloads = newDownloadPipeline();
+    private final SnapshotStore store = new SnapshotStore(SNAPSHOT_FILE);
+    private volatile KnowledgeSnapshot snapshot = KnowledgeSnapshot.empty(help);
+    private volatile SyncReport lastSyncReport = null;
+    private final List<Consumer<KnowledgeSnapshot>> snapshotListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<SyncReport>> syncListeners = new CopyOnWriteArrayList<>();
+
+    public BetonWiki() {
+        try {
+            registry = SourceRegistry.load(SOURCES_FILE);
+        } catch (IOException | IllegalArgumentException e) {
+            BetonHelperBot.log.error("Could not load the wiki sources from " + SOURCES_FILE + ": " + e.getMessage());
+            System.exit(1);
+            throw new IllegalStateException(e);
+        }
+        sources = registry.getSources();
+        versions = registry.getVersions();
+        File snapshotDirectory = SNAPSHOT_FILE.getAbsoluteFile().getParentFile();
+        for (WikiVersion version : versions) {
+            version.setSnapshot(new KnowledgeSnapshot(version.getName(), 0, null, help, Collections.emptyList(), null));
+            versionStores.put(version, new SnapshotStore(new File(snapshotDirectory, "knowledge-" + version.getName() + ".bin"),
+                                                         version.getName()));
+            for (WikiSource source : version.getSources()) source.getFile().getAbsoluteFile().getParentFile().mkdirs();
+        }
+        //Pages that were discovered in a previous run are known before the saved database is loaded
+        HttpSource index = registry.getIndex();
+        if (index != null && index.getFile().isFile()) {
+            String content = FileHelper.readToString(index.getFile());
+            if (content != null) updateSources(content);
+        }
+    }
 
     /**
-     * Gets the url to a section of the wiki
+     * Loads the knowledge database that was saved after the last successful synchronization
+     * <p>
+     * This is much faster than a synchronization, but the database may be outdated so the wiki should be
+     * synchronized afterwards. The saved databases of the older versions are loaded too, sharing all equal tips.
      *
-     * @param baseUrl      the base url of the site that contains the section
-     * @param sectionTitle the title of the section
-     * @return the direct url to the section
+     * @return true if the saved database of the current wiki was loaded and published
      */
-    private static String getSectionUrl(String baseUrl, String sectionTitle) {
-        return baseUrl + "#" + sectionTitle.toLowerCase().replaceAll("[^a-zA-Z\\s0-9]", "").replaceAll("\\s", "-");
+    public synchronized boolean loadPersisted() {
+        long start = System.nanoTime();
+        TipPool pool = new TipPool();
+        KnowledgeSnapshot loaded = load(store, sources, pool);
+        if (loaded != null) publish(null, loaded);
+        for (WikiVersion version : versions) {
+            KnowledgeSnapshot loadedVersion = load(versionStores.get(version), version.getSources(), pool);
+            if (loadedVersion != null) publish(version, loadedVersion);
+        }
+        if (loaded == null) return false;
+        BetonHelperBot.log.info("Loaded saved database in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                                        + "ms (version " + loaded.getVersion() + ", synchronized "
+                                        + loaded.getSynchronizedTimestamp() + ")");
+        return true;
     }
 
-    private static String getSectionUrl(String baseUrl, String... sectionTitle) {
-        StringBuilder titleBuilder = new StringBuilder();
-        for (String string : sectionTitle) {
-            if (string == null) continue;
-            if (titleBuilder.length() != 0) titleBuilder.append(' ');
-            titleBuilder.append(string);
+    private KnowledgeSnapshot load(SnapshotStore store, List<WikiSource> sources, TipPool pool) {
+        try {
+            return store.read(help, sources, pool);
+        } catch (IOException e) {
+            BetonHelperBot.log.warn("Could not load the saved database from " + store.getFile() + ": " + e.getMessage());
+            return null;
         }
-        return getSectionUrl(baseUrl, titleBuilder.toString());
     }
 
     /**
      * Synchronizes the bots knowledge database with the wiki
+     * <p>
+     * The new database is built as a separate snapshot and published at once when it is complete.
+     * Pages that were not modified since the last synchronization are not parsed again, of the modified pages only
+     * the changed tips are replaced and indexed again. The pages of all versions are downloaded together and tips
+     * that are equal in several versions are only kept once.
      */
-    public void synchronizeWiki() {
+    public synchronized void synchronizeWiki() {
         BetonHelperBot.log.info("Starting synchronization of wiki...");
-        boolean success = true;
-        if (!URLHelper.downloadToFile(EVENTS_LIST_RAW_URL, EVENTS_LIST_FILE)) success = false;
-        if (!URLHelper.downloadToFile(CONDITIONS_LIST_RAW_URL, CONDITIONS_LIST_FILE)) success = false;
-        if (!URLHelper.downloadToFile(OBJECTIVES_LIST_RAW_URL, OBJECTIVES_LIST_FILE)) success = false;
-        if (!URLHelper.downloadToFile(VARIABLES_LIST_RAW_URL, VARIABLES_LIST_FILE)) success = false;
-        if (success) {
-            synchronized_timestamp = ZonedDateTime.now();
+        long start = System.currentTimeMillis();
+        KnowledgeSnapshot previous = snapshot;
+        ZonedDateTime synchronizedTimestamp = previous.getSynchronizedTimestamp();
+        if (registry.getIndex() != null) discover();
+        List<WikiSource> sources = this.sources;
+        List<HttpSource> httpSources = new ArrayList<>();
+        for (WikiSource source : sources) {
+            if (source.isDue(start)) httpSources.add(source.getHttpSource());
+        }
+        for (WikiVersion version : versions) {
+            for (WikiSource source : version.getSources()) {
+                if (source.isDue(start)) httpSources.add(source.getHttpSource());
+            }
+        }
+        Map<HttpSource, FetchResult> results = downloads.fetchAll(httpSources, DOWNLOAD_TIMEOUT);
+        int skipped = 0, failed = 0;
+        long bytesTransferred = 0;
+        for (FetchResult result : results.values()) {
+            if (result.isFailed()) failed++;
+            bytesTransferred += result.getBytesTransferred();
+        }
+        ZonedDateTime now = ZonedDateTime.now();
+        boolean complete = isComplete(sources, results);
+        if (complete) {
+            synchronizedTimestamp = now;
         } else {
             BetonHelperBot.log.warn("Not all data could be downloaded from the wiki. Bot uses local files instead...");
         }
-        tips = new HashMap<>();
-        addTip(help);
-
-        {//Load events
-            String eventsContent = FileHelper.readToString(EVENTS_LIST_FILE);
-            if (eventsContent == null) {
-                BetonHelperBot.log.error("Couldn't read " + EVENTS_LIST_FILE.getName());
-                System.exit(1);
-                return;
+        //The pool only holds the tips of the last synchronization, so tips that were removed everywhere are freed
+        TipPool pool = new TipPool();
+        for (TipCategory category : previous.getCategories()) pool.add(category);
+        for (WikiVersion version : versions) {
+            for (TipCategory category : version.getSnapshot().getCategories()) pool.add(category);
+        }
+        List<SyncReport.Source> sourceReports = new ArrayList<>();
+        ChangeSet.Builder changes = new ChangeSet.Builder();
+        List<TipCategory> categories = parse(null, sources, results, start, pool, changes, sourceReports);
+        if (categories == null) {
+            //The bot keeps answering from the previous snapshot and the next synchronization tries again
+            lastSyncReport = new SyncReport(sourceReports.size(), 0, failed, bytesTransferred,
+                                            System.currentTimeMillis() - start, sourceReports,
+                                            new ChangeSet.Builder().build(), false);
+            return;
+        }
+        publish(null, new KnowledgeSnapshot(previous.getVersion() + 1, synchronizedTimestamp, help, categories, previous));
+        if (complete) save(store, snapshot, sources);
+        for (WikiVersion version : versions) {
+            KnowledgeSnapshot previousVersion = version.getSnapshot();
+            boolean versionComplete = isComplete(version.getSources(), results);
+            if (!versionComplete) {
+                BetonHelperBot.log.warn("Not all pages of version " + version + " could be downloaded. Bot uses local files instead...");
             }
-            Matcher eventsMatcher = EVENTS_REGEX.matcher(eventsContent);
-            List<Tip> tips = new ArrayList<>();
-            while (eventsMatcher.find()) {
-                final String
-                        title = eventsMatcher.group(1),
-                        identifier = eventsMatcher.group(2),
-                        attributes = eventsMatcher.group(3),
-                        text = eventsMatcher.group(4),
-                        url = getSectionUrl(EVENTS_LIST_BASE_URL, title, identifier, attributes);
-                Tip tip = new Tip(title + " event", text, identifier)
-                        .addAdditionalInformation("Attributes:", attributes)
-                        .addAdditionalInformation("Link:", url);
-                tips.add(tip);
+            //Changes of older versions are not reported, they are only caused by fixes of their documentation
+            List<TipCategory> versionCategories = parse(version, version.getSources(), results, start, pool,
+                                                        new ChangeSet.Builder(), sourceReports);
+            publish(version, new KnowledgeSnapshot(version.getName(), previousVersion.getVersion() + 1,
+                                                   versionComplete ? now : previousVersion.getSynchronizedTimestamp(),
+                                                   help, versionCategories, previousVersion));
+            if (versionComplete) save(versionStores.get(version), version.getSnapshot(), version.getSources());
+        }
+        for (SyncReport.Source report : sourceReports) {
+            if (report.getParseTime() < 0 && report.getStatus() != FetchResult.Status.FAILED) skipped++;
+        }
+        lastSyncReport = new SyncReport(sourceReports.size(), skipped, failed, bytesTransferred,
+                                        System.currentTimeMillis() - start, sourceReports, changes.build(), complete);
+        BetonHelperBot.log.info("Update of database successful! (version " + snapshot.getVersion() + ", " + lastSyncReport + ")");
+        for (Consumer<SyncReport> listener : syncListeners) {
+            try {
+                listener.accept(lastSyncReport);
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while handling sync report:", e);
             }
-            Tip events = new TipCategory("Events List", "event", null, tips, "events") {
-                @Override
-                public String getText() {
-                    String txt = "Here is a list of all known events:\n";
-                    StringJoiner join = new StringJoiner(", ");
-                    for (String id : this.identifiers) join.add(id);
-                    txt += "```" + join.toString() + "```";
-                    return txt;
-                }
-            }.addAdditionalInformation("Link:", EVENTS_LIST_BASE_URL);
-            addTip(events);
         }
+    }
 
-        {//Load conditions
-            String conditionsContent = FileHelper.readToString(CONDITIONS_LIST_FILE);
-            if (conditionsContent == null) {
-                BetonHelperBot.log.error("Couldn't read " + CONDITIONS_LIST_FILE.getName());
-                System.exit(1);
-                return;
-            }
-            Matcher conditionsMatcher = CONDITIONS_REGEX.matcher(conditionsContent);
-            List<Tip> tips = new ArrayList<>();
-            while (conditionsMatcher.find()) {
-                final String
-                        title = conditionsMatcher.group(1),
-                        identifier = conditionsMatcher.group(2),
-                        attributes = conditionsMatcher.group(3),
-                        text = conditionsMatcher.group(4),
-                        url = getSectionUrl(CONDITIONS_LIST_BASE_URL, title, identifier, attributes);
-                Tip tip = new Tip(title + " condition", text, identifier)
-                        .addAdditionalInformation("Attributes:", attributes)
-                        .addAdditionalInformation("Link:", url);
-                tips.add(tip);
-            }
-            Tip conditions = new TipCategory("Conditions List", "condition", null, tips, "conditions") {
-                @Override
-                public String getText() {
-                    String txt = "Here is a list of all known conditions:\n";
-                    StringJoiner join = new StringJoiner(", ");
-                    for (String id : this.identifiers) join.add(id);
-                    txt += "```" + join.toString() + "```";
-                    return txt;
-                }
-            }.addAdditionalInformation("Link:", CONDITIONS_LIST_BASE_URL);
-            addTip(conditions);
+    /**
+     * Discovered pages can be linked but missing, only the configured ones need to be complete
+     *
+     * @return true if no configured page failed to download
+     */
+    private boolean isComplete(List<WikiSource> sources, Map<HttpSource, FetchResult> results) {
+        for (WikiSource source : sources) {
+            FetchResult result = results.get(source.getHttpSource());
+            if (result != null && result.isFailed() && !registry.isDiscovered(source)) return false;
         }
+        return true;
+    }
 
-        {//Load objectives
-            String objectivesContent = FileHelper.readToString(OBJECTIVES_LIST_FILE);
-            if (objectivesContent == null) {
-                BetonHelperBot.log.error("Couldn't read " + OBJECTIVES_LIST_FILE.getName());
-                System.exit(1);
-                return;
+    /**
+     * Parses the downloaded pages of one version of the wiki, pages that did not change keep their category
+     * <p>
+     * The sources are only updated if all pages could be parsed, so a failed synchronization leaves them as they
+     * were and downloads the pages again next time.
+     *
+     * @param version the version of the pages or null for the current wiki
+     * @return the categories of the pages or null if a configured page of the current wiki can't be read at all
+     */
+    private List<TipCategory> parse(WikiVersion version, List<WikiSource> sources, Map<HttpSource, FetchResult> results,
+                                    long start, TipPool pool, ChangeSet.Builder changes,
+                                    List<SyncReport.Source> sourceReports) {
+        String prefix = version == null ? "" : version.getName() + "/";
+        List<TipCategory> categories = new ArrayList<>();
+        List<WikiSource> fetched = new ArrayList<>();
+        Map<WikiSource, TipCategory> parsed = new LinkedHashMap<>();
+        for (WikiSource source : sources) {
+            FetchResult result = results.getOrDefault(source.getHttpSource(), NOT_DUE);
+            //Only pages that were actually downloaded restart their interval
+            if (result != NOT_DUE && !result.isFailed()) fetched.add(source);
+            TipCategory category = source.getCategory();
+            if (category != null && (result.isSkipped() || result.isFailed())) {
+                categories.add(category);
+                sourceReports.add(new SyncReport.Source(prefix + source.getIdentifier(), result.getStatus(),
+                                                        result.getBytesTransferred(), result.getDuration(), -1));
+                continue;
+            }
+            //Freshly downloaded content is parsed directly instead of reading the file again
+            String content = result.getContent() != null ? FileHelper.toText(result.getContent())
+                    : source.getFile().isFile() ? FileHelper.readToString(source.getFile()) : null;
+            if (content == null && (version != null || registry.isDiscovered(source))) {
+                BetonHelperBot.log.warn("Skipping " + prefix + source.getFile().getName() + ", it was never downloaded");
+                sourceReports.add(new SyncReport.Source(prefix + source.getIdentifier(), result.getStatus(),
+                                                        result.getBytesTransferred(), result.getDuration(), -1));
+                continue;
             }
-            Matcher objectivesMatcher = OBJECTIVES_REGEX.matcher(objectivesContent);
-            List<Tip> tips = new ArrayList<>();
-            while (objectivesMatcher.find()) {
-                final String
-                        title = objectivesMatcher.group(1),
-                        identifier = objectivesMatcher.group(2),
-                        attributes = objectivesMatcher.group(3),
-                        text = objectivesMatcher.group(4),
-                        url = getSectionUrl(OBJECTIVES_LIST_BASE_URL, title, identifier, attributes);
-                Tip tip = new Tip(title + " objective", text, identifier)
-                        .addAdditionalInformation("Attributes:", attributes)
-                        .addAdditionalInformation("Link:", url);
-                tips.add(tip);
+            if (content == null) {
+                BetonHelperBot.log.error("Couldn't read " + source.getFile().getName() + ", the synchronization failed");
+                return null;
             }
-            Tip objectives = new TipCategory("Objectives List", "objective", null, tips, "objectives") {
-                @Override
-                public String getText() {
-                    String txt = "Here is a list of all known objectives:\n";
-                    StringJoiner join = new StringJoiner(", ");
-                    for (String id : this.identifiers) join.add(id);
-                    txt += "```" + join.toString() + "```";
-                    return txt;
-                }
-            }.addAdditionalInformation("Link:", OBJECTIVES_LIST_BASE_URL);
-            addTip(objectives);
+            long parseStart = System.nanoTime();
+            category = source.reparse(content, changes, pool);
+            long parseTime = System.nanoTime() - parseStart;
+            parsed.put(source, category);
+            categories.add(category);
+            sourceReports.add(new SyncReport.Source(prefix + source.getIdentifier(), result.getStatus(),
+                                                    result.getBytesTransferred(), result.getDuration(), parseTime));
         }
+        for (WikiSource source : fetched) source.fetched(start);
+        for (Map.Entry<WikiSource, TipCategory> entry : parsed.entrySet()) entry.getKey().setCategory(entry.getValue());
+        return categories;
+    }
 
-        {//Load variables
-            String variablesContent = FileHelper.readToString(VARIABLES_LIST_FILE);
-            if (variablesContent == null) {
-                BetonHelperBot.log.error("Couldn't read " + VARIABLES_LIST_FILE.getName());
-                System.exit(1);
-                return;
-            }
-            Matcher variablesMatcher = VARIABLES_REGEX.matcher(variablesContent);
-            List<Tip> tips = new ArrayList<>();
-            while (variablesMatcher.find()) {
-                final String
-                        title = variablesMatcher.group(1),
-                        identifier = variablesMatcher.group(2),
-                        text = variablesMatcher.group(3),
-                        url = getSectionUrl(VARIABLES_LIST_BASE_URL, title, identifier);
-                Tip tip = new Tip(title + " variable", text, identifier)
-                        .addAdditionalInformation("Link:", url);
-                tips.add(tip);
+    private static void save(SnapshotStore store, KnowledgeSnapshot snapshot, List<WikiSource> sources) {
+        try {
+            store.write(snapshot, sources);
+        } catch (IOException e) {
+            BetonHelperBot.log.warn("Could not save the database to " + store.getFile() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Downloads the index page and adds all pages that are linked on it to the sources
+     */
+    private void discover() {
+        HttpSource index = registry.getIndex();
+        index.getFile().getAbsoluteFile().getParentFile().mkdirs();
+        FetchResult result = downloads.fetchAll(Collections.singletonList(index), DOWNLOAD_TIMEOUT).get(index);
+        String content = result.getContent() != null ? FileHelper.toText(result.getContent())
+                : index.getFile().isFile() ? FileHelper.readToString(index.getFile()) : null;
+        if (content == null) {
+            BetonHelperBot.log.warn("Could not discover the pages of the wiki, the index " + index + " is not available");
+            return;
+        }
+        int before = sources.size();
+        updateSources(content);
+        if (sources.size() != before) {
+            BetonHelperBot.log.info("Discovered " + (sources.size() - registry.getSources().size()) + " pages of the wiki");
+        }
+    }
+
+    private void updateSources(String index) {
+        List<WikiSource> updated = new ArrayList<>(registry.getSources());
+        updated.addAll(registry.discover(index));
+        sources = Collections.unmodifiableList(updated);
+    }
+
+    private static DownloadPipeline newDownloadPipeline() {
+        return new DownloadPipeline(DOWNLOAD_CONCURRENCY, DOWNLOAD_PER_HOST, DOWNLOAD_CONNECT_TIMEOUT,
+                                    DOWNLOAD_READ_TIMEOUT, DOWNLOAD_ATTEMPTS, DOWNLOAD_BACKOFF);
+    }
+
+    /**
+     * Replaces the download threads and their connections, waits if a synchronization is running
+     */
+    public synchronized void recycleDownloads() {
+        DownloadPipeline old = downloads;
+        downloads = newDownloadPipeline();
+        old.shutdown();
+    }
+
+    /**
+     * Publishes a new snapshot and notifies all listeners about it
+     *
+     * @param version the version the snapshot belongs to or null for the current wiki
+     */
+    private void publish(WikiVersion version, KnowledgeSnapshot snapshot) {
+        if (version == null) {
+            this.snapshot = snapshot;
+        } else {
+            version.setSnapshot(snapshot);
+        }
+        for (Consumer<KnowledgeSnapshot> listener : snapshotListeners) {
+            try {
+                listener.accept(snapshot);
+            } catch (RuntimeException e) {
+                BetonHelperBot.log.error("Error while handling snapshot " + snapshot.getVersion() + ":", e);
             }
-            Tip variables = new TipCategory("Variables List", "variable", null, tips, "variables") {
-                @Override
-                public String getText() {
-                    String txt = "Here is a list of all known variables:\n";
-                    StringJoiner join = new StringJoiner(", ");
-                    for (String id : this.identifiers) join.add(id);
-                    txt += "```" + join.toString() + "```";
-                    return txt;
-                }
-            }.addAdditionalInformation("Link:", VARIABLES_LIST_BASE_URL);
-            addTip(variables);
         }
-        BetonHelperBot.log.info("Update of database successful!");
+    }
+
+    /**
+     * Registers a listener that is called on the synchronization thread each time a new snapshot of the current wiki
+     * or of an older version was published
+     *
+     * @param listener the listener
+     */
+    public void addSnapshotListener(Consumer<KnowledgeSnapshot> listener) {
+        snapshotListeners.add(listener);
+    }
+
+    /**
+     * Registers a listener that is called on the synchronization thread after each synchronization
+     *
+     * @param listener the listener
+     */
+    public void addSyncListener(Consumer<SyncReport> listener) {
+        syncListeners.add(listener);
     }
 
     /**
      * Gets a tip that should be sent as answer to a message
      *
      * @param message the message to answer
-     * @return the fitting tip from the knowledge database
+     * @return the fitting tip from the current knowledge database and the snapshot it was taken from
      */
-    public Tip findTip(String message) {
-        String[] words = message.split("[^\\w]+");
-        outer:
-        for (int i = 0; i < words.length; i++) {
-            String word = words[i].toLowerCase();
-            if (word.isEmpty() || word.startsWith(BetonHelperBot.getInstance().getSelfUserName().toLowerCase()))
-                continue outer;
-            Tip tip = tips.get(word);
-            if (tip != null) {
-                if (tip instanceof TipCategory) {
-                    TipCategory category = (TipCategory) tip;
-                    inner:
-                    for (int j = 0; j < words.length; j++) {
-                        if (j == i)
-                            continue inner;
-                        word = words[j].toLowerCase();
-                        if (word.isEmpty() || word.startsWith(BetonHelperBot.getInstance().getSelfUserName().toLowerCase()))
-                            continue inner;
-                        Tip subTip = category.getSubTip(word);
-                        if (subTip != null) return subTip;
-                    }
-                    return category;
-                } else {
-                    return tip;
-                }
-            }
-        }
-        return help;
+    public Answer findTip(String message) {
+        KnowledgeSnapshot current = snapshot;
+        return new Answer(current.findTip(message, BetonHelperBot.getInstance().getSelfUserName()), current);
     }
 
     /**
-     * Adds a tip with all its alternate identifiers to the list
+     * Selects the snapshot that should answer a message
+     * <p>
+     * A version is used if the message contains one of its keywords as a word, otherwise the default version of the
+     * guild. Versions that were never synchronized are ignored.
      *
-     * @param tip
+     * @param message the content of the message
+     * @param guildId the id of the guild the message was sent in or 0 for private messages
+     * @return the snapshot of the selected version or the current snapshot
      */
-    private void addTip(Tip tip) {
-        for (String identifier : tip.getAllIdentifiers()) {
-            tips.put(identifier.toLowerCase(), tip);
+    public KnowledgeSnapshot selectSnapshot(String message, long guildId) {
+        if (versions.isEmpty()) return snapshot;
+        WikiVersion selected = null;
+        for (String word : message.toLowerCase(Locale.ROOT).split("\\s+")) {
+            for (WikiVersion version : versions) {
+                if (version.getKeywords().contains(word)) selected = version;
+            }
+            if (selected != null) break;
         }
+        if (selected == null && guildId != 0) {
+            for (WikiVersion version : versions) {
+                if (version.getGuilds().contains(guildId)) selected = version;
+            }
+        }
+        if (selected == null || selected.getSnapshot().getCategories().isEmpty()) return snapshot;
+        return selected.getSnapshot();
+    }
+
+    /**
+     * @return the currently published snapshot of the knowledge database
+     */
+    public KnowledgeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the currently published snapshots of the current wiki and of all older versions
+     */
+    public List<KnowledgeSnapshot> getSnapshots() {
+        List<KnowledgeSnapshot> snapshots = new ArrayList<>(versions.size() + 1);
+        snapshots.add(snapshot);
+        for (WikiVersion version : versions) snapshots.add(version.getSnapshot());
+        return snapshots;
+    }
+
+    /**
+     * @return the older versions of the wiki
+     */
+    public List<WikiVersion> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return statistics about the last synchronization or null if the wiki was not synchronized yet
+     */
+    public SyncReport getLastSyncReport() {
+        return lastSyncReport;
     }
 
     /**
      * @return the timestamp when the wiki was last synchronized
      */
     public ZonedDateTime getSynchronized_timestamp() {
-        return synchronized_timestamp;
+        return snapshot.getSynchronizedTimestamp();
     }
 }
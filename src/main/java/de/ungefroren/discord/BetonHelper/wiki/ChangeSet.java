@@ -0,0 +1,142 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tips that were added, modified or removed by one synchronization of the wiki
+ */
+public final class ChangeSet {
+
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private static final ChangeSet EMPTY = new ChangeSet(Collections.emptyList());
+
+    private final List<Change> changes;
+
+    private ChangeSet(List<Change> changes) {
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return a change set that contains no changes
+     */
+    public static ChangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return all changes in the order the categories were synchronized
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Gets all changes of one type
+     *
+     * @param type the type of the changes
+     * @return the changes in the order the categories were synchronized
+     */
+    public List<Change> getChanges(Type type) {
+        List<Change> filtered = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.type == type) filtered.add(change);
+        }
+        return filtered;
+    }
+
+    /**
+     * @return if nothing was changed
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return getChanges(Type.ADDED).size() + " added, " + getChanges(Type.MODIFIED).size() + " modified, "
+                + getChanges(Type.REMOVED).size() + " removed";
+    }
+
+    /**
+     * A single tip that was changed
+     */
+    public static final class Change {
+
+        private final Type type;
+        private final String category;
+        private final Tip tip;
+
+        Change(Type type, String category, Tip tip) {
+            this.type = type;
+            this.category = category;
+            this.tip = tip;
+        }
+
+        /**
+         * @return what happened to the tip
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the identifier of the category that contains the tip
+         */
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * @return the new tip or the removed one
+         */
+        public Tip getTip() {
+            return tip;
+        }
+
+        @Override
+        public String toString() {
+            return type.name().toLowerCase() + " " + category + " " + tip.getIdentifier();
+        }
+    }
+
+    /**
+     * Collects the changes of a synchronization
+     */
+    static final class Builder {
+
+        private final List<Change> changes = new ArrayList<>();
+
+        Builder add(Type type, String category, Tip tip) {
+            changes.add(new Change(type, category, tip));
+            return this;
+        }
+
+        ChangeSet build() {
+            return changes.isEmpty() ? EMPTY : new ChangeSet(new ArrayList<>(changes));
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable inverted index over the titles, descriptions and additional information of tips, ranking them with
+ * BM25 for natural language questions that don't contain an identifier.
+ * <p>
+ * The postings of all terms are stored in flat int arrays: the postings of term {@code t} are at the positions
+ * {@code postingsStart[t]} to {@code postingsStart[t + 1]} of {@link #postingDocs} and {@link #postingFrequencies}.
+ */
+public final class FullTextIndex {
+
+    private static final float K1 = 1.2f, B = 0.75f;
+    /**
+     * Words in the title count this many times as much as words in the description
+     */
+    private static final int TITLE_WEIGHT = 3;
+    /**
+     * Only the rarest terms of a very long query are looked up
+     */
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "about", "after", "all", "also", "am", "an", "and", "any", "are", "as", "at", "be", "because", "been",
+            "before", "but", "by", "can", "could", "did", "do", "does", "doesn", "don", "for", "from", "get", "has",
+            "have", "he", "hello", "help", "hey", "hi", "how", "i", "if", "in", "into", "is", "it", "its", "just", "me",
+            "my", "need", "no", "not", "of", "on", "one", "or", "please", "s", "she", "so", "some", "t", "that", "the",
+            "their", "them", "then", "there", "these", "they", "this", "to", "use", "want", "was", "what", "when",
+            "where", "which", "who", "why", "will", "with", "work", "would", "you", "your"));
+
+    private final Tip[] docs;
+    private final int[] docLengths;
+    private final float averageDocLength;
+    private final Map<String, Integer> termIds;
+    private final int[] postingsStart;
+    private final int[] postingDocs;
+    private final int[] postingFrequencies;
+    private final float[] idf;
+
+    /**
+     * Builds the index over the given tips
+     *
+     * @param tips the tips to index
+     */
+    public FullTextIndex(List<? extends Tip> tips) {
+        this(tips, null);
+    }
+
+    /**
+     * Builds the index over the given tips, the terms of tips that are also in the previous index are not
+     * extracted again but read from its postings
+     *
+     * @param tips     the tips to index
+     * @param previous the index of the last snapshot or null
+     */
+    public FullTextIndex(List<? extends Tip> tips, FullTextIndex previous) {
+        docs = tips.toArray(new Tip[0]);
+        docLengths = new int[docs.length];
+        Map<Tip, Integer> previousDocs = new IdentityHashMap<>();
+        if (previous != null) {
+            for (int doc = 0; doc < previous.docs.length; doc++) previousDocs.put(previous.docs[doc], doc);
+        }
+        //The term frequencies are only needed while building, the index itself keeps nothing but the postings
+        List<Map<String, Integer>> termFrequencies = new ArrayList<>(docs.length);
+        int[] reused = previous == null ? null : new int[previous.docs.length];
+        if (reused != null) Arrays.fill(reused, -1);
+        long totalLength = 0;
+        for (int doc = 0; doc < docs.length; doc++) {
+            Integer previousDoc = previousDocs.get(docs[doc]);
+            Map<String, Integer> tf = new HashMap<>();
+            if (previousDoc != null) {
+                reused[previousDoc] = doc;
+                docLengths[doc] = previous.docLengths[previousDoc];
+            } else {
+                docLengths[doc] += addTerms(tf, docs[doc].getTitle(), TITLE_WEIGHT);
+                docLengths[doc] += addTerms(tf, docs[doc].getText(), 1);
+                for (Tip.AdditionalInfo info : docs[doc].getAdditionalInformation()) {
+                    docLengths[doc] += addTerms(tf, info.getContent(), 1);
+                }
+            }
+            termFrequencies.add(tf);
+            totalLength += docLengths[doc];
+        }
+        //The terms of unchanged tips are collected from the postings of the previous index
+        if (reused != null && !previousDocs.isEmpty()) {
+            for (Map.Entry<String, Integer> term : previous.termIds.entrySet()) {
+                int id = term.getValue();
+                for (int p = previous.postingsStart[id]; p < previous.postingsStart[id + 1]; p++) {
+                    int doc = reused[previous.postingDocs[p]];
+                    if (doc >= 0) termFrequencies.get(doc).put(term.getKey(), previous.postingFrequencies[p]);
+                }
+            }
+        }
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        for (Map<String, Integer> tf : termFrequencies) {
+            for (String term : tf.keySet()) documentFrequencies.merge(term, 1, Integer::sum);
+        }
+        averageDocLength = docs.length == 0 ? 0 : (float) totalLength / docs.length;
+        //Assign term ids and the ranges of their postings
+        termIds = new HashMap<>(documentFrequencies.size() * 2);
+        postingsStart = new int[documentFrequencies.size() + 1];
+        idf = new float[documentFrequencies.size()];
+        int termId = 0, offset = 0;
+        for (Map.Entry<String, Integer> entry : documentFrequencies.entrySet()) {
+            int df = entry.getValue();
+            termIds.put(entry.getKey(), termId);
+            postingsStart[termId] = offset;
+            idf[termId] = (float) Math.log(1 + (docs.length - df + 0.5) / (df + 0.5));
+            offset += df;
+            termId++;
+        }
+        postingsStart[termId] = offset;
+        //Fill the postings, documents are added in ascending order
+        postingDocs = new int[offset];
+        postingFrequencies = new int[offset];
+        int[] fill = Arrays.copyOf(postingsStart, termId);
+        for (int doc = 0; doc < docs.length; doc++) {
+            for (Map.Entry<String, Integer> entry : termFrequencies.get(doc).entrySet()) {
+                int id = termIds.get(entry.getKey());
+                postingDocs[fill[id]] = doc;
+                postingFrequencies[fill[id]] = entry.getValue();
+                fill[id]++;
+            }
+        }
+    }
+
+    /**
+     * Adds the terms of a text to the term frequencies
+     *
+     * @return the number of terms that were added (weighted)
+     */
+    private static int addTerms(Map<String, Integer> tf, String text, int weight) {
+        if (text == null) return 0;
+        int count = 0;
+        for (String term : terms(text)) {
+            tf.merge(term, weight, Integer::sum);
+            count += weight;
+        }
+        return count;
+    }
+
+    /**
+     * Splits a text into normalized terms, removing stop words. Words consist of the same characters as the words
+     * of a {@link MessageTokenizer}, so identifiers like {@code give_item} are one term in both.
+     *
+     * @param text the text
+     * @return the terms in order of their occurrence
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (MessageTokenizer.isWordCharacter(c)) {
+                word.append(MessageTokenizer.toLowerCase(c));
+            } else if (word.length() > 0) {
+                String term = normalize(word.toString());
+                if (term != null) terms.add(term);
+                word.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Normalizes a single lowercase word: underscores around it (markdown emphasis like {@code _persistent_}) are
+     * stripped, stop words are removed and plurals are reduced to their singular
+     *
+     * @return the term or null if the word should not be indexed
+     */
+    private static String normalize(String word) {
+        int start = 0, end = word.length();
+        while (start < end && word.charAt(start) == '_') start++;
+        while (end > start && word.charAt(end - 1) == '_') end--;
+        if (start == end) return null;
+        if (start > 0 || end < word.length()) word = word.substring(start, end);
+        if (STOP_WORDS.contains(word)) return null;
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            word = word.endsWith("ies") ? word.substring(0, word.length() - 3) + "y" : word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    /**
+     * Searches the tips that fit a question best
+     *
+     * @param words  the tokenized question
+     * @param k      the maximum number of results
+     * @param budget the maximum time in nanoseconds that is spent on scoring, terms that don't fit in the budget
+     *               are ignored (rarest terms are scored first, at most the 16 rarest terms are scored at all)
+     * @return the best results, ordered by descending score
+     */
+    public List<Hit> search(MessageTokenizer words, int k, long budget) {
+        long deadline = System.nanoTime() + budget;
+        int[] terms = new int[words.size()];
+        int termCount = 0;
+        for (int w = 0; w < words.size(); w++) {
+            String term = normalize(words.word(w));
+            Integer id = term == null ? null : termIds.get(term);
+            if (id == null) continue;
+            boolean duplicate = false;
+            for (int i = 0; i < termCount; i++) duplicate |= terms[i] == id;
+            if (!duplicate) terms[termCount++] = id;
+        }
+        if (termCount == 0) return Collections.emptyList();
+        //Rare terms first, they have the biggest influence on the ranking
+        for (int i = 1; i < termCount; i++) {
+            int term = terms[i], j = i - 1;
+            while (j >= 0 && idf[terms[j]] < idf[term]) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+        //Long questions only keep their rarest terms, no matter where they are in the message
+        termCount = Math.min(termCount, MAX_QUERY_TERMS);
+        float[] scores = new float[docs.length];
+        for (int t = 0; t < termCount; t++) {
+            if (t > 0 && System.nanoTime() > deadline) break;
+            int term = terms[t];
+            for (int p = postingsStart[term]; p < postingsStart[term + 1]; p++) {
+                int doc = postingDocs[p];
+                float tf = postingFrequencies[p];
+                float norm = K1 * (1 - B + B * docLengths[doc] / averageDocLength);
+                scores[doc] += idf[term] * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        //Select the k best documents
+        int[] best = new int[Math.min(k, docs.length)];
+        int found = 0;
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] <= 0) continue;
+            if (found < best.length) {
+                best[found++] = doc;
+            } else if (found > 0 && scores[doc] > scores[best[found - 1]]) {
+                best[found - 1] = doc;
+            } else {
+                continue;
+            }
+            for (int i = found - 1; i > 0 && scores[best[i]] > scores[best[i - 1]]; i--) {
+                int swap = best[i];
+                best[i] = best[i - 1];
+                best[i - 1] = swap;
+            }
+        }
+        List<Hit> hits = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) hits.add(new Hit(docs[best[i]], scores[best[i]]));
+        return hits;
+    }
+
+    /**
+     * @return the number of indexed tips
+     */
+    public int size() {
+        return docs.length;
+    }
+
+    /**
+     * A tip that was found by a search
+     */
+    public static final class Hit {
+
+        private final Tip tip;
+        private final float score;
+
+        Hit(Tip tip, float score) {
+            this.tip = tip;
+            this.score = score;
+        }
+
+        /**
+         * @return the tip that was found
+         */
+        public Tip getTip() {
+            return tip;
+        }
+
+        /**
+         * @return the BM25 score of the tip, higher is better
+         */
+        public float getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import de.ungefroren.discord.BetonHelper.utils.BKTree;
+
+/**
+ * An immutable view of the bots knowledge database at one point in time.
+ * <p>
+ * A snapshot is completely built before it is published, so readers never see a half synchronized database and
+ * don't need any locking.
+ */
+public final class KnowledgeSnapshot {
+
+    /**
+     * The maximum number of typos that are corrected in a single word
+     */
+    private static final int MAX_TYPOS = Integer.getInteger("betonhelper.lookup.maxTypos", 2);
+    /**
+     * The maximum time in microseconds that is spent on a full text search
+     */
+    private static final long SEARCH_BUDGET = Long.getLong("betonhelper.search.budget", 500);
+    /**
+     * The minimum BM25 score of a full text search result to be used as answer
+     */
+    private static final float SEARCH_MIN_SCORE = Float.parseFloat(System.getProperty("betonhelper.search.minScore", "3"));
+    /**
+     * The minimum length of a word that is completed to an identifier, shorter words like "the" or "get" are too
+     * often meant as they are written
+     */
+    private static final int MIN_PREFIX_LENGTH = 4;
+    /**
+     * The maximum number of identifiers that are suggested if a word is the beginning of multiple identifiers
+     */
+    private static final int MAX_SUGGESTIONS = 10;
+    /**
+     * Words that are one typo away from an identifier but are almost always meant as they are written
+     */
+    private static final Set<String> NO_TYPOS = new HashSet<>(Arrays.asList("even", "ever", "hell", "held", "helm"));
+
+    private final String wikiVersion;
+    private final long version;
+    private final ZonedDateTime synchronizedTimestamp;
+    private final Tip help;
+    private final Map<String, Tip> tips;
+    private final List<TipCategory> categories;
+    private final BKTree<Tip> similarTips;
+    private final FullTextIndex fullText;
+    /**
+     * The suggestions that were already created by category identifier and word, so a repeated question is answered
+     * with the same tip. There is at most one per prefix of an identifier
+     */
+    private final Map<String, Tip> suggestions;
+
+    /**
+     * @param version               the version number of this snapshot, increasing with each synchronization
+     * @param synchronizedTimestamp the timestamp when the wiki was last synchronized or null if it never was
+     * @param help                  the tip that is returned if nothing else matches
+     * @param categories            all categories that are known in this snapshot
+     */
+    public KnowledgeSnapshot(long version, ZonedDateTime synchronizedTimestamp, Tip help, List<TipCategory> categories) {
+        this(version, synchronizedTimestamp, help, categories, null);
+    }
+
+    /**
+     * Creates a snapshot that reuses the lookup structures of the previous one for everything that did not change
+     *
+     * @param version               the version number of this snapshot, increasing with each synchronization
+     * @param synchronizedTimestamp the timestamp when the wiki was last synchronized or null if it never was
+     * @param help                  the tip that is returned if nothing else matches
+     * @param categories            all categories that are known in this snapshot
+     * @param previous              the snapshot this one replaces or null
+     */
+    public KnowledgeSnapshot(long version, ZonedDateTime synchronizedTimestamp, Tip help, List<TipCategory> categories,
+                             KnowledgeSnapshot previous) {
+        this(null, version, synchronizedTimestamp, help, categories, previous);
+    }
+
+    /**
+     * Creates a snapshot of a version of the wiki, reusing the lookup structures of the previous snapshot of that
+     * version for everything that did not change
+     *
+     * @param wikiVersion           the name of the version of the wiki or null for the current one
+     * @param version               the version number of this snapshot, increasing with each synchronization
+     * @param synchronizedTimestamp the timestamp when the wiki was last synchronized or null if it never was
+     * @param help                  the tip that is returned if nothing else matches
+     * @param categories            all categories that are known in this snapshot
+     * @param previous              the snapshot this one replaces or null
+     */
+    public KnowledgeSnapshot(String wikiVersion, long version, ZonedDateTime synchronizedTimestamp, Tip help,
+                             List<TipCategory> categories, KnowledgeSnapshot previous) {
+        this.wikiVersion = wikiVersion;
+        this.version = version;
+        this.synchronizedTimestamp = synchronizedTimestamp;
+        this.help = help;
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        if (previous != null && previous.help == help && sameCategories(previous.categories, categories)) {
+            this.tips = previous.tips;
+            this.similarTips = previous.similarTips;
+            this.fullText = previous.fullText;
+            this.suggestions = previous.suggestions;
+            return;
+        }
+        HashMap<String, Tip> tips = new HashMap<>();
+        addTip(tips, help);
+        for (TipCategory category : categories) addTip(tips, category);
+        this.tips = Collections.unmodifiableMap(tips);
+        this.similarTips = new BKTree<>(tips);
+        List<Tip> subTips = new ArrayList<>();
+        for (TipCategory category : categories) subTips.addAll(category.getSubTips());
+        this.fullText = new FullTextIndex(subTips, previous == null ? null : previous.fullText);
+        this.suggestions = new ConcurrentHashMap<>();
+    }
+
+    private static boolean sameCategories(List<TipCategory> a, List<TipCategory> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates a snapshot that contains nothing but the help tip
+     *
+     * @param help the tip that is returned if nothing else matches
+     * @return a empty snapshot with version 0
+     */
+    public static KnowledgeSnapshot empty(Tip help) {
+        return new KnowledgeSnapshot(0, null, help, Collections.emptyList());
+    }
+
+    /**
+     * Adds a tip with all its alternate identifiers to the map
+     */
+    private static void addTip(Map<String, Tip> tips, Tip tip) {
+        for (String identifier : tip.getAllIdentifiers()) {
+            tips.put(identifier.toLowerCase(), tip);
+        }
+    }
+
+    /**
+     * Gets the number of typos that are tolerated in a word, so short words don't match everything
+     *
+     * @param word the word
+     * @return the maximum distance to an identifier
+     */
+    private static int maxTypos(String word) {
+        int length = word.length();
+        return Math.min(MAX_TYPOS, length < 4 ? 0 : length < 7 ? 1 : 2);
+    }
+
+    /**
+     * Gets a tip that should be sent as answer to a message.
+     * <p>
+     * Identifiers that are written correctly are preferred, if there are none the most similar identifier is used.
+     * If the message contains no identifier at all, the best result of a full text search is used.
+     *
+     * @param message      the message to answer
+     * @param selfUserName the lowercase name of the bot account, words starting with it are ignored
+     * @return the fitting tip from this snapshot
+     */
+    public Tip findTip(String message, String selfUserName) {
+        return findTip(MessageTokenizer.get().tokenize(message, selfUserName));
+    }
+
+    /**
+     * Gets a tip that should be sent as answer to a tokenized message, see {@link #findTip(String, String)}
+     *
+     * @param words the words of the message
+     * @return the fitting tip from this snapshot
+     */
+    Tip findTip(MessageTokenizer words) {
+        for (int i = 0; i < words.size(); i++) {
+            Tip tip = tips.get(words.word(i));
+            if (tip != null) return resolve(tip, i, words);
+        }
+        BKTree.Match<Tip> best = null;
+        int bestIndex = -1;
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.word(i);
+            if (NO_TYPOS.contains(word)) continue;
+            BKTree.Match<Tip> match = similarTips.findBest(word, maxTypos(word));
+            if (match != null && (best == null || match.getDistance() < best.getDistance())) {
+                best = match;
+                bestIndex = i;
+            }
+        }
+        if (best != null) return resolve(best.getValue(), bestIndex, words);
+        List<FullTextIndex.Hit> hits = fullText.search(words, 1, TimeUnit.MICROSECONDS.toNanos(SEARCH_BUDGET));
+        if (!hits.isEmpty() && hits.get(0).getScore() >= SEARCH_MIN_SCORE) return hits.get(0).getTip();
+        return help;
+    }
+
+    /**
+     * Searches the tips whose descriptions fit a question best
+     *
+     * @param message the question
+     * @param k       the maximum number of results
+     * @return the best results, ordered by descending score
+     */
+    public List<FullTextIndex.Hit> search(String message, int k) {
+        MessageTokenizer words = MessageTokenizer.get().tokenize(message, null);
+        return fullText.search(words, k, TimeUnit.MICROSECONDS.toNanos(SEARCH_BUDGET));
+    }
+
+    /**
+     * Resolves a matching tip: if it is a category the other words are searched for one of its sub tips.
+     * <p>
+     * Exact sub tip identifiers end the search immediately. Otherwise a misspelled identifier is preferred over a
+     * word that is the beginning of exactly one identifier, if a word is the beginning of multiple identifiers they
+     * are suggested. The words are walked only once.
+     */
+    private Tip resolve(Tip tip, int index, MessageTokenizer words) {
+        if (!(tip instanceof TipCategory)) return tip;
+        TipCategory category = (TipCategory) tip;
+        BKTree.Match<Tip> best = null;
+        List<Tip> completions = null;
+        String completed = null;
+        for (int j = 0; j < words.size(); j++) {
+            if (j == index) continue;
+            String word = words.word(j);
+            Tip subTip = category.getSubTip(word);
+            if (subTip != null) return subTip;
+            //Words without tolerated typos only match exactly and no similar match is closer than one typo
+            int typos = maxTypos(word);
+            if (typos > 0 && (best == null || best.getDistance() > 1)) {
+                BKTree.Match<Tip> match = category.getSimilarSubTip(word, typos);
+                if (match != null) {
+                    if (best == null || match.getDistance() < best.getDistance()) best = match;
+                    //A misspelled identifier is not completed to a different one
+                    continue;
+                }
+            }
+            //Completions are only needed as long as there is no misspelled identifier,
+            //the longest word that is the beginning of an identifier is the most specific one
+            if (best == null && word.length() >= MIN_PREFIX_LENGTH
+                    && (completed == null || word.length() > completed.length())) {
+                List<Tip> found = category.getSubTipsByPrefix(word, MAX_SUGGESTIONS + 1);
+                if (!found.isEmpty()) {
+                    completions = found;
+                    completed = word;
+                }
+            }
+        }
+        if (best != null) return best.getValue();
+        if (completions == null) return category;
+        if (completions.size() == 1) return completions.get(0);
+        List<Tip> found = completions;
+        String prefix = completed;
+        return suggestions.computeIfAbsent(category.getIdentifier() + " " + prefix,
+                                           key -> suggest(category, prefix, found));
+    }
+
+    /**
+     * Creates a tip that lists the identifiers of a category that start with a word
+     *
+     * @param category    the category of the identifiers
+     * @param word        the beginning of the identifiers
+     * @param completions the sub tips with the identifiers, one more than {@link #MAX_SUGGESTIONS} if there are more
+     * @return the tip that asks the user which identifier was meant
+     */
+    private static Tip suggest(TipCategory category, String word, List<Tip> completions) {
+        StringJoiner identifiers = new StringJoiner(", ");
+        for (int i = 0; i < Math.min(MAX_SUGGESTIONS, completions.size()); i++) {
+            identifiers.add(completions.get(i).getIdentifier());
+        }
+        if (completions.size() > MAX_SUGGESTIONS) identifiers.add("\u2026");
+        Tip suggestion = new Tip("Did you mean one of these?",
+                                 "`" + word + "` is the beginning of multiple identifiers in the " + category.getTitle()
+                                         + ":\n```" + identifiers + "```",
+                                 category.getIdentifier() + " " + word);
+        for (Tip.AdditionalInfo info : category.getAdditionalInformation()) {
+            suggestion.addAdditionalInformation(info.getTitle(), info.getContent());
+        }
+        return suggestion;
+    }
+
+    /**
+     * @return the name of the version of the wiki this snapshot belongs to or null for the current one
+     */
+    public String getWikiVersion() {
+        return wikiVersion;
+    }
+
+    /**
+     * @return the version number of this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the timestamp when the wiki was last synchronized or null if it never was
+     */
+    public ZonedDateTime getSynchronizedTimestamp() {
+        return synchronizedTimestamp;
+    }
+
+    /**
+     * @return the tip that is returned if nothing else matches
+     */
+    public Tip getHelp() {
+        return help;
+    }
+
+    /**
+     * @return a unmodifiable map of all top level tips by their lowercase identifiers
+     */
+    public Map<String, Tip> getTips() {
+        return tips;
+    }
+
+    /**
+     * @return a unmodifiable list of all categories
+     */
+    public List<TipCategory> getCategories() {
+        return categories;
+    }
+}
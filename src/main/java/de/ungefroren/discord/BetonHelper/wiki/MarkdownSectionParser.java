@@ -0,0 +1,247 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+/**
+ * Finds the sections of a wiki page in a single pass without regular expressions.
+ * <p>
+ * A section starts with a heading like {@code ## Title: `identifier` _modifiers_}, followed by its description.
+ * The description ends before the next line that contains a {@code #}. Optionally headings without an identifier
+ * like {@code ## Title} start a section too, their identifier is derived from the title.
+ * The parser works like a {@link java.util.regex.Matcher}:
+ * call {@link #find()} until it returns false and read the groups of the current section in between.
+ * <p>
+ * The content is expected to use {@code \n} as line separator, like the content returned by
+ * {@link de.ungefroren.discord.BetonHelper.utils.FileHelper#toText(byte[])}.
+ */
+public final class MarkdownSectionParser {
+
+    private final CharSequence content;
+    private final boolean withModifiers;
+    private final boolean titlesOnly;
+    private final int length;
+    private int position = 0;
+    private int titleStart, titleEnd, identifierStart, identifierEnd, modifiersStart, modifiersEnd, bodyStart, bodyEnd;
+
+    /**
+     * @param content       the content of the page
+     * @param withModifiers if the headings can contain modifiers like {@code _persistent_} after the identifier
+     */
+    public MarkdownSectionParser(CharSequence content, boolean withModifiers) {
+        this(content, withModifiers, false);
+    }
+
+    /**
+     * @param content       the content of the page
+     * @param withModifiers if the headings can contain modifiers like {@code _persistent_} after the identifier
+     * @param titlesOnly    if headings without an identifier also start a section
+     */
+    public MarkdownSectionParser(CharSequence content, boolean withModifiers, boolean titlesOnly) {
+        this.content = content;
+        this.withModifiers = withModifiers;
+        this.titlesOnly = titlesOnly;
+        this.length = content.length();
+    }
+
+    /**
+     * Searches the next section
+     *
+     * @return if another section was found
+     */
+    public boolean find() {
+        while (position < length) {
+            int lineStart = position;
+            int lineEnd = indexOf('\n', lineStart);
+            position = lineEnd + 1;
+            if (matchHeading(lineStart, lineEnd)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tries to match a heading on the given line and reads the description following it
+     */
+    private boolean matchHeading(int lineStart, int lineEnd) {
+        int i = skipBlanks(lineStart, lineEnd);
+        if (i + 2 > lineEnd || content.charAt(i) != '#' || content.charAt(i + 1) != '#') return false;
+        i += 2;
+        int blanksStart = i;
+        i = skipBlanks(i, lineEnd);
+        if (i == blanksStart) return false;
+        if (matchIdentifierHeading(i, blanksStart, lineEnd)) return true;
+        return titlesOnly && matchTitleHeading(i, lineEnd);
+    }
+
+    /**
+     * Matches the rest of a heading like {@code ## Title: `identifier` _modifiers_}
+     */
+    private boolean matchIdentifierHeading(int i, int blanksStart, int lineEnd) {
+        //The title is everything up to the first colon
+        int colon = i;
+        while (colon < lineEnd && content.charAt(colon) != ':') colon++;
+        if (colon == lineEnd) return false;
+        titleStart = i;
+        titleEnd = colon;
+        if (titleStart == titleEnd) {
+            //The title needs at least one character, so it takes the last blank if there are enough of them
+            if (titleStart - blanksStart < 2) return false;
+            titleStart--;
+        }
+        //The identifier is surrounded by backticks
+        i = skipBlanks(colon + 1, lineEnd);
+        if (i >= lineEnd || content.charAt(i) != '`') return false;
+        identifierStart = ++i;
+        while (i < lineEnd && content.charAt(i) != '`') i++;
+        if (i == lineEnd || i == identifierStart) return false;
+        identifierEnd = i++;
+        //The optional modifiers reach from an underscore to the last underscore of the line
+        modifiersStart = modifiersEnd = -1;
+        int rest = i;
+        if (withModifiers) {
+            int start = skipBlanks(i, lineEnd);
+            if (start < lineEnd && content.charAt(start) == '_') {
+                int end = lineEnd - 1;
+                while (end > start && content.charAt(end) != '_') end--;
+                if (end >= start + 2) {
+                    modifiersStart = start;
+                    modifiersEnd = end + 1;
+                    rest = modifiersEnd;
+                }
+            }
+        }
+        //A rest of the heading line that contains a hash can't be part of a description
+        for (int j = rest; j < lineEnd; j++) {
+            if (content.charAt(j) == '#') return false;
+        }
+        readBody(rest);
+        return true;
+    }
+
+    /**
+     * Matches the rest of a heading like {@code ## Title}, the whole line is the title
+     */
+    private boolean matchTitleHeading(int i, int lineEnd) {
+        int end = lineEnd;
+        while (end > i && (content.charAt(end - 1) == ' ' || content.charAt(end - 1) == '\t' || content.charAt(end - 1) == '\r')) end--;
+        if (end == i) return false;
+        for (int j = i; j < end; j++) {
+            if (content.charAt(j) == '#') return false;
+        }
+        titleStart = i;
+        titleEnd = end;
+        identifierStart = identifierEnd = -1;
+        modifiersStart = modifiersEnd = -1;
+        readBody(lineEnd);
+        return true;
+    }
+
+    /**
+     * Reads the description that starts at the given position. It ends before the first line that contains a hash.
+     */
+    private void readBody(int from) {
+        int start = from;
+        int lastNewLine = -1;
+        while (start < length) {
+            char c = content.charAt(start);
+            if (c == '\n') lastNewLine = start;
+            else if (c != ' ' && c != '\t') break;
+            start++;
+        }
+        int i = start;
+        int lineStart = start;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (c == '#') {
+                if (lineStart == start) {
+                    //The first line of the description contains a hash, so the description is empty
+                    bodyStart = bodyEnd = lastNewLine;
+                } else {
+                    bodyStart = start;
+                    bodyEnd = lineStart - 1;
+                }
+                position = bodyEnd + 1;
+                return;
+            }
+            if (c == '\n') lineStart = i + 1;
+            i++;
+        }
+        bodyStart = start;
+        bodyEnd = length;
+        position = length;
+    }
+
+    private int skipBlanks(int from, int to) {
+        while (from < to && (content.charAt(from) == ' ' || content.charAt(from) == '\t')) from++;
+        return from;
+    }
+
+    private int indexOf(char c, int from) {
+        while (from < length && content.charAt(from) != c) from++;
+        return from;
+    }
+
+    /**
+     * @return the title of the current section
+     */
+    public String getTitle() {
+        return content.subSequence(titleStart, titleEnd).toString();
+    }
+
+    /**
+     * @return the identifier of the current section, derived from the title if the heading has none
+     */
+    public String getIdentifier() {
+        if (identifierStart < 0) return slug(getTitle());
+        return content.subSequence(identifierStart, identifierEnd).toString();
+    }
+
+    /**
+     * Turns a title into an identifier: lowercase letters and digits, everything else is replaced by single
+     * underscores, so the identifier is a single word for the {@link MessageTokenizer}
+     *
+     * @param title the title
+     * @return the identifier
+     */
+    public static String slug(String title) {
+        StringBuilder slug = new StringBuilder(title.length());
+        for (int i = 0; i < title.length(); i++) {
+            char c = Character.toLowerCase(title.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                slug.append(c);
+            } else if (slug.length() > 0 && slug.charAt(slug.length() - 1) != '_') {
+                slug.append('_');
+            }
+        }
+        if (slug.length() > 0 && slug.charAt(slug.length() - 1) == '_') slug.setLength(slug.length() - 1);
+        return slug.toString();
+    }
+
+    /**
+     * @return the modifiers of the current section (including the underscores) or null if it has none
+     */
+    public String getModifiers() {
+        return modifiersStart < 0 ? null : content.subSequence(modifiersStart, modifiersEnd).toString();
+    }
+
+    /**
+     * @return the description of the current section
+     */
+    public String getBody() {
+        return content.subSequence(bodyStart, bodyEnd).toString();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.Arrays;
+
+/**
+ * Splits messages into lowercase words in a single pass, without regular expressions.
+ * <p>
+ * Words consist of the characters {@code [a-zA-Z0-9_]}, like {@code \w} in a regular expression. A tokenizer is
+ * reused for many messages, so apart from the words themselves tokenizing a message doesn't allocate anything.
+ * A tokenizer is not thread safe, use {@link #get()} to get the one of the current thread.
+ */
+public final class MessageTokenizer {
+
+    private static final ThreadLocal<MessageTokenizer> TOKENIZERS = ThreadLocal.withInitial(MessageTokenizer::new);
+
+    private char[] buffer = new char[64];
+    private String[] words = new String[16];
+    private int size = 0;
+
+    /**
+     * @return the tokenizer of the current thread
+     */
+    public static MessageTokenizer get() {
+        return TOKENIZERS.get();
+    }
+
+    /**
+     * Splits a message into lowercase words, replacing the words of the previous message
+     *
+     * @param message       the message
+     * @param ignoredPrefix lowercase prefix of words that are skipped or null to keep all words
+     * @return this tokenizer
+     */
+    public MessageTokenizer tokenize(String message, String ignoredPrefix) {
+        Arrays.fill(words, 0, size, null);
+        size = 0;
+        int length = 0;
+        for (int i = 0; i <= message.length(); i++) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (isWordCharacter(c)) {
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, length * 2);
+                buffer[length++] = toLowerCase(c);
+            } else if (length > 0) {
+                if (!startsWith(length, ignoredPrefix)) add(new String(buffer, 0, length));
+                length = 0;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param c the character
+     * @return if the character is part of a word, one of {@code [a-zA-Z0-9_]}
+     */
+    static boolean isWordCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * @param c a word character
+     * @return the lowercase character
+     */
+    static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private boolean startsWith(int length, String prefix) {
+        if (prefix == null || prefix.length() > length) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void add(String word) {
+        if (size == words.length) words = Arrays.copyOf(words, size * 2);
+        words[size++] = word;
+    }
+
+    /**
+     * @return the number of words in the last message
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the position of the word in the message
+     * @return the lowercase word
+     */
+    public String word(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return words[index];
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers which tip answered a message, so frequent questions like {@code event give} are not searched again.
+ * <p>
+ * Messages are keyed by their words, so messages that only differ in punctuation, case or the mention of the bot
+ * share an entry. The key also contains the wiki version and number of the snapshot, so entries of an old snapshot
+ * are never used again after a synchronization and are evicted over time. The entries are split into segments by
+ * their hash, each segment evicts its least recently used entries when it is full.
+ */
+public final class QueryCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache whose size is configured by the system property {@code betonhelper.queryCache.size}
+     */
+    public QueryCache() {
+        this(Integer.getInteger("betonhelper.queryCache.size", 4096));
+    }
+
+    /**
+     * @param maxSize the maximum number of messages that are remembered, 0 to disable the cache
+     */
+    public QueryCache(int maxSize) {
+        if (maxSize <= 0) {
+            segments = null;
+            return;
+        }
+        segments = new Segment[SEGMENTS];
+        int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(segmentSize);
+    }
+
+    /**
+     * Gets the tip that answers a message, searching the snapshot only if the same words were not asked before
+     *
+     * @param snapshot     the snapshot that answers the message
+     * @param message      the message to answer
+     * @param selfUserName the lowercase name of the bot account, words starting with it are ignored
+     * @return the fitting tip from the snapshot
+     */
+    public Tip findTip(KnowledgeSnapshot snapshot, String message, String selfUserName) {
+        MessageTokenizer words = MessageTokenizer.get().tokenize(message, selfUserName);
+        if (segments == null) return snapshot.findTip(words);
+        Key key = new Key(snapshot, words);
+        Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+        Tip tip;
+        synchronized (segment) {
+            tip = segment.get(key);
+        }
+        if (tip != null) {
+            hits.increment();
+            return tip;
+        }
+        misses.increment();
+        tip = snapshot.findTip(words);
+        synchronized (segment) {
+            segment.put(key, tip);
+        }
+        return tip;
+    }
+
+    /**
+     * @return the number of messages that were answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of messages that had to be searched in the snapshot
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of messages that were answered from the cache or NaN if there were no messages yet
+     */
+    public double getHitRatio() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    /**
+     * @return the number of entries that were removed to make room for new ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of remembered messages
+     */
+    public int size() {
+        if (segments == null) return 0;
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The words of a message and the snapshot they were searched in
+     */
+    private static final class Key {
+
+        private final String wikiVersion;
+        private final long version;
+        private final String[] words;
+        private final int hash;
+
+        Key(KnowledgeSnapshot snapshot, MessageTokenizer words) {
+            this.wikiVersion = snapshot.getWikiVersion();
+            this.version = snapshot.getVersion();
+            this.words = new String[words.size()];
+            for (int i = 0; i < this.words.length; i++) this.words[i] = words.word(i);
+            this.hash = 31 * (31 * Objects.hashCode(wikiVersion) + Long.hashCode(version)) + Arrays.hashCode(this.words);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hash == key.hash && version == key.version && Objects.equals(wikiVersion, key.wikiVersion)
+                    && Arrays.equals(words, key.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A part of the cache in access order, only used while holding its lock
+     */
+    private final class Segment extends LinkedHashMap<Key, Tip> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Tip> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.ungefroren.discord.BetonHelper.utils.HttpSource;
+
+/**
+ * Saves the parsed knowledge database to a compact binary file, so it can be loaded on startup without downloading
+ * and parsing the wiki again.
+ * <p>
+ * Layout of the file (all numbers big endian, lengths and counts as unsigned varints, strings as UTF-8):
+ * <pre>
+ * int     magic "BHKS"
+ * int     format version
+ * long    snapshot version
+ * long    synchronized timestamp in epoch milliseconds or -1, followed by the zone id if present
+ * varint  number of sources, each: identifier, etag, last modified, content hash
+ * varint  number of categories, each: tip, number of sub tips, sub tips
+ * int     CRC32 of everything before it
+ * </pre>
+ * A tip is written as title, text, identifier, alternative identifiers and additional information.
+ * Strings that can be null are prefixed with a boolean.
+ */
+public final class SnapshotStore {
+
+    private static final int MAGIC = 0x42484B53;
+    /**
+     * Increase this each time the layout or the derived identifiers change, files with another version are ignored
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final String wikiVersion;
+
+    /**
+     * @param file the file the snapshot is saved to
+     */
+    public SnapshotStore(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param file        the file the snapshot is saved to
+     * @param wikiVersion the name of the version of the wiki the snapshot belongs to or null for the current one
+     */
+    public SnapshotStore(File file, String wikiVersion) {
+        this.file = file;
+        this.wikiVersion = wikiVersion;
+    }
+
+    /**
+     * Writes the snapshot and the validators of its sources to the file
+     * <p>
+     * The snapshot is written to a temporary file first and then moved over the old one, so a crash while writing
+     * never leaves a broken file behind.
+     *
+     * @param snapshot the snapshot to save
+     * @param sources  the sources the categories of the snapshot were parsed from
+     * @throws IOException if the file can't be written
+     */
+    public void write(KnowledgeSnapshot snapshot, List<WikiSource> sources) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            CRC32 crc = new CRC32();
+            BufferedOutputStream buffered = new BufferedOutputStream(new FileOutputStream(temp));
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshot.getVersion());
+                ZonedDateTime timestamp = snapshot.getSynchronizedTimestamp();
+                out.writeLong(timestamp == null ? -1 : timestamp.toInstant().toEpochMilli());
+                if (timestamp != null) writeString(out, timestamp.getZone().getId());
+                writeVarInt(out, sources.size());
+                for (WikiSource source : sources) {
+                    HttpSource http = source.getHttpSource();
+                    byte[] hash = http.getContentHash();
+                    writeString(out, source.getIdentifier());
+                    writeNullableString(out, http.getEtag());
+                    writeNullableString(out, http.getLastModified());
+                    writeVarInt(out, hash == null ? 0 : hash.length);
+                    if (hash != null) out.write(hash);
+                }
+                List<TipCategory> categories = snapshot.getCategories();
+                writeVarInt(out, categories.size());
+                for (TipCategory category : categories) {
+                    writeTip(out, category);
+                    writeVarInt(out, category.getSubTips().size());
+                    for (Tip tip : category.getSubTips()) writeTip(out, tip);
+                }
+                //The checksum itself is written past the checked stream
+                out.flush();
+                new DataOutputStream(buffered).writeInt((int) crc.getValue());
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Reads the snapshot from the file, the file is memory mapped instead of being copied into a buffer
+     * <p>
+     * The validators of the given sources are restored and each source gets the category with its identifier.
+     * All data is decoded into strings and arrays, nothing keeps a reference to the mapping after this method
+     * returns. The mapping itself is only released once the buffer is garbage collected, until then the file
+     * stays mapped. This is harmless because the snapshot is only read once at startup and {@link #write}
+     * replaces the file by moving a new file over it instead of writing into the mapped one.
+     *
+     * @param help    the tip that is returned by the snapshot if nothing else matches
+     * @param sources the sources the categories were parsed from
+     * @return the snapshot or null if there is no file or it was written by another version of the bot
+     * @throws IOException if the file can't be read or is corrupted
+     */
+    public KnowledgeSnapshot read(Tip help, List<WikiSource> sources) throws IOException {
+        return read(help, sources, new TipPool());
+    }
+
+    /**
+     * Reads the snapshot from the file and deduplicates its tips with the tips of other versions
+     *
+     * @param help    the tip that is returned by the snapshot if nothing else matches
+     * @param sources the sources the categories were parsed from
+     * @param pool    the tips of the other versions of the wiki
+     * @return the snapshot or null if there is no file or it was written by another version of the bot
+     * @throws IOException if the file can't be read or is corrupted
+     */
+    KnowledgeSnapshot read(Tip help, List<WikiSource> sources, TipPool pool) throws IOException {
+        if (!file.isFile()) return null;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 12 || buffer.getInt(0) != MAGIC) throw new IOException("Not a snapshot file");
+        if (buffer.getInt(4) != FORMAT_VERSION) return null;
+        ByteBuffer content = buffer.duplicate();
+        content.limit(buffer.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) throw new IOException("Checksum mismatch");
+        try {
+            content.position(8);
+            long version = content.getLong();
+            long millis = content.getLong();
+            ZonedDateTime timestamp = millis < 0 ? null
+                    : ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.of(readString(content)));
+            Map<String, WikiSource> byIdentifier = new HashMap<>();
+            for (WikiSource source : sources) byIdentifier.put(source.getIdentifier(), source);
+            int sourceCount = readVarInt(content);
+            Map<WikiSource, Validators> validators = new HashMap<>();
+            for (int i = 0; i < sourceCount; i++) {
+                String identifier = readString(content);
+                String etag = readNullableString(content), lastModified = readNullableString(content);
+                byte[] hash = new byte[readVarInt(content)];
+                content.get(hash);
+                WikiSource source = byIdentifier.get(identifier);
+                if (source != null && hash.length > 0) {
+                    validators.put(source, new Validators(etag, lastModified, hash));
+                }
+            }
+            int categoryCount = readVarInt(content);
+            List<TipCategory> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                Tip header = readTip(content);
+                int subTipCount = readVarInt(content);
+                List<Tip> subTips = new ArrayList<>(subTipCount);
+                for (int j = 0; j < subTipCount; j++) subTips.add(pool.intern(readTip(content)));
+                TipCategory category = new TipCategory(header.title, header.identifier, header.text, subTips,
+                                                       header.alternativeIdentifiers);
+                for (Tip.AdditionalInfo info : header.getAdditionalInformation()) {
+                    category.addAdditionalInformation(info.getTitle(), info.getContent());
+                }
+                categories.add(pool.intern(category));
+            }
+            //Only touch the sources when the whole file could be read
+            for (TipCategory category : categories) {
+                WikiSource source = byIdentifier.get(category.getIdentifier());
+                if (source == null) continue;
+                source.setCategory(category);
+                Validators validator = validators.get(source);
+                //The validators are only valid as long as the local copy exists
+                if (validator != null && source.getFile().isFile()) {
+                    source.getHttpSource().restore(validator.etag, validator.lastModified, validator.contentHash);
+                }
+            }
+            return new KnowledgeSnapshot(wikiVersion, version, timestamp, help, categories, null);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted snapshot file", e);
+        }
+    }
+
+    /**
+     * @return the file the snapshot is saved to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private static void writeTip(DataOutputStream out, Tip tip) throws IOException {
+        writeString(out, tip.title);
+        writeString(out, tip.text);
+        writeString(out, tip.identifier);
+        writeVarInt(out, tip.alternativeIdentifiers.length);
+        for (String identifier : tip.alternativeIdentifiers) writeString(out, identifier);
+        List<Tip.AdditionalInfo> infos = tip.getAdditionalInformation();
+        writeVarInt(out, infos.size());
+        for (Tip.AdditionalInfo info : infos) {
+            writeString(out, info.getTitle());
+            writeString(out, info.getContent());
+        }
+    }
+
+    private static Tip readTip(ByteBuffer in) {
+        String title = readString(in), text = readString(in), identifier = readString(in);
+        String[] alternativeIdentifiers = new String[readVarInt(in)];
+        for (int i = 0; i < alternativeIdentifiers.length; i++) alternativeIdentifiers[i] = readString(in);
+        Tip tip = new Tip(title, text, identifier, alternativeIdentifiers);
+        int infos = readVarInt(in);
+        for (int i = 0; i < infos; i++) tip.addAdditionalInformation(readString(in), readString(in));
+        return tip;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) writeString(out, string);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readNullableString(ByteBuffer in) {
+        return in.get() != 0 ? readString(in) : null;
+    }
+
+    /**
+     * Writes an unsigned int with 7 bits per byte, the highest bit marks that another byte follows
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * The validators of a source as they were saved
+     */
+    private static final class Validators {
+
+        private final String etag;
+        private final String lastModified;
+        private final byte[] contentHash;
+
+        private Validators(String etag, String lastModified, byte[] contentHash) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.ungefroren.discord.BetonHelper.utils.HttpSource;
+import de.ungefroren.discord.BetonHelper.utils.URLHelper;
+
+/**
+ * The pages of the wiki the bot learns from, declared in a properties file.
+ * <p>
+ * Each page of the {@code sources} list is configured with the keys {@code <identifier>.title}, {@code .plural},
+ * {@code .raw}, {@code .link}, {@code .file}, {@code .parser} and {@code .interval}. If {@code discover.index} is set,
+ * all pages that are linked on that page are added too. Older versions of the configured pages are declared with
+ * {@code versions}, see {@code sources.properties} for all keys.
+ */
+public final class SourceRegistry {
+
+    private static final String DEFAULT_RESOURCE = "/sources.properties";
+    /**
+     * Links like {@code [[Page]]} or {@code [[Text|Page]]}
+     */
+    private static final Pattern WIKI_LINK = Pattern.compile("\\[\\[(?:[^\\]|]*\\|)?([^\\]|#]+)(?:#[^\\]]*)?]]");
+    /**
+     * Links like {@code [Text](Page)} or {@code [Text](https://github.com/user/repo/wiki/Page#section)}
+     */
+    private static final Pattern MARKDOWN_LINK = Pattern.compile("]\\(([^)\\s#]+)(?:#[^)]*)?\\)");
+
+    private final List<WikiSource> configured;
+    private final List<WikiVersion> versions;
+    private final Set<String> configuredIdentifiers = new HashSet<>();
+    private final Set<String> configuredUrls = new HashSet<>();
+    private final HttpSource index;
+    private final String discoverRaw;
+    private final String discoverLink;
+    private final File discoverDirectory;
+    private final WikiSource.Parser discoverParser;
+    private final long discoverInterval;
+    private final int discoverLimit;
+    /**
+     * Discovered pages by their identifier, kept so a page keeps its category and validators between discoveries
+     */
+    private final Map<String, WikiSource> discovered = new HashMap<>();
+
+    /**
+     * @param properties the configuration
+     * @throws IllegalArgumentException if a key is missing or has an invalid value
+     */
+    public SourceRegistry(Properties properties) {
+        List<WikiSource> configured = new ArrayList<>();
+        for (String identifier : properties.getProperty("sources", "").split(",")) {
+            identifier = identifier.trim();
+            if (identifier.isEmpty()) continue;
+            String raw = required(properties, identifier + ".raw");
+            WikiSource source = new WikiSource(identifier, properties.getProperty(identifier + ".plural"),
+                                               properties.getProperty(identifier + ".title", identifier),
+                                               url(raw), new File(properties.getProperty(identifier + ".file", identifier + ".md")),
+                                               required(properties, identifier + ".link"),
+                                               parser(properties, identifier + ".parser", "sections"),
+                                               interval(properties, identifier + ".interval"));
+            configured.add(source);
+            configuredIdentifiers.add(identifier);
+            configuredUrls.add(raw);
+        }
+        this.configured = Collections.unmodifiableList(configured);
+        List<WikiVersion> versions = new ArrayList<>();
+        for (String name : properties.getProperty("versions", "").split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            versions.add(version(properties, name));
+        }
+        this.versions = Collections.unmodifiableList(versions);
+        String indexUrl = properties.getProperty("discover.index");
+        if (indexUrl == null || indexUrl.trim().isEmpty()) {
+            index = null;
+            discoverRaw = discoverLink = null;
+            discoverDirectory = null;
+            discoverParser = null;
+            discoverInterval = 0;
+            discoverLimit = 0;
+            return;
+        }
+        URL url = url(indexUrl.trim());
+        discoverRaw = slash(required(properties, "discover.raw"));
+        discoverLink = slash(required(properties, "discover.link"));
+        discoverDirectory = new File(properties.getProperty("discover.directory", "wiki"));
+        discoverParser = parser(properties, "discover.parser", "headings");
+        discoverInterval = interval(properties, "discover.interval");
+        discoverLimit = Integer.parseInt(properties.getProperty("discover.limit", "500").trim());
+        String name = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+        index = new HttpSource(url, new File(discoverDirectory, name.isEmpty() ? "index.md" : name));
+        configuredUrls.add(url.toString());
+    }
+
+    /**
+     * Loads the registry from a file, or from the default configuration of the bot if the file doesn't exist
+     *
+     * @param file the properties file
+     * @return the registry
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if a key is missing or has an invalid value
+     */
+    public static SourceRegistry load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = file.isFile() ? new FileInputStream(file) : SourceRegistry.class.getResourceAsStream(DEFAULT_RESOURCE);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new SourceRegistry(properties);
+    }
+
+    /**
+     * Creates an older version of the configured pages, their raw urls are changed by replacing a part of them
+     */
+    private WikiVersion version(Properties properties, String name) {
+        String prefix = "version." + name + ".";
+        String from = required(properties, prefix + "from"), to = required(properties, prefix + "to");
+        File directory = new File(properties.getProperty(prefix + "directory", "versions" + File.separator + name));
+        List<WikiSource> sources = new ArrayList<>();
+        for (WikiSource source : configured) {
+            String raw = source.getHttpSource().getUrl().toString();
+            if (!raw.contains(from)) throw new IllegalArgumentException(prefix + "from is not part of " + raw);
+            sources.add(source.relocate(url(raw.replace(from, to)), new File(directory, source.getFile().getName())));
+        }
+        Set<String> keywords = new HashSet<>();
+        for (String keyword : properties.getProperty(prefix + "keywords", name).split(",")) {
+            if (!keyword.trim().isEmpty()) keywords.add(keyword.trim().toLowerCase(Locale.ROOT));
+        }
+        Set<Long> guilds = new HashSet<>();
+        for (String guild : properties.getProperty(prefix + "guilds", "").split(",")) {
+            if (!guild.trim().isEmpty()) guilds.add(Long.parseUnsignedLong(guild.trim()));
+        }
+        return new WikiVersion(name, keywords, guilds, sources);
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) throw new IllegalArgumentException("Missing " + key);
+        return value.trim();
+    }
+
+    private static URL url(String url) {
+        try {
+            return URLHelper.create(url);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid url " + url, e);
+        }
+    }
+
+    private static WikiSource.Parser parser(Properties properties, String key, String def) {
+        String value = properties.getProperty(key, def).trim();
+        try {
+            return WikiSource.Parser.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown parser " + value + " for " + key);
+        }
+    }
+
+    /**
+     * @return the interval in milliseconds, configured in minutes
+     */
+    private static long interval(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null ? 0 : TimeUnit.MINUTES.toMillis(Long.parseLong(value.trim()));
+    }
+
+    private static String slash(String url) {
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * @return the pages that are declared in the configuration, in the order they are declared
+     */
+    public List<WikiSource> getSources() {
+        return configured;
+    }
+
+    /**
+     * @return the older versions of the configured pages, in the order they are declared
+     */
+    public List<WikiVersion> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return the page that links all pages that should be discovered or null if discovery is disabled
+     */
+    public HttpSource getIndex() {
+        return index;
+    }
+
+    /**
+     * @param source a page
+     * @return if the page was discovered instead of being declared in the configuration
+     */
+    public boolean isDiscovered(WikiSource source) {
+        return discovered.get(source.getIdentifier()) == source;
+    }
+
+    /**
+     * Finds all pages that are linked on the index page
+     * <p>
+     * Pages that are declared in the configuration are skipped, pages that were discovered before are returned as
+     * the same object.
+     *
+     * @param content the content of the index page
+     * @return the discovered pages in the order they are linked
+     */
+    public synchronized List<WikiSource> discover(CharSequence content) {
+        if (index == null) return Collections.emptyList();
+        Map<String, WikiSource> found = new LinkedHashMap<>();
+        Matcher wikiLink = WIKI_LINK.matcher(content);
+        while (wikiLink.find()) addPage(found, wikiLink.group(1));
+        Matcher markdownLink = MARKDOWN_LINK.matcher(content);
+        while (markdownLink.find()) {
+            String target = markdownLink.group(1);
+            if (target.startsWith(discoverLink)) {
+                addPage(found, target.substring(discoverLink.length()));
+            } else if (target.indexOf(':') < 0 && target.indexOf('/') < 0) {
+                addPage(found, target);
+            }
+        }
+        discovered.keySet().retainAll(found.keySet());
+        discovered.putAll(found);
+        return new ArrayList<>(found.values());
+    }
+
+    private void addPage(Map<String, WikiSource> found, String link) {
+        if (found.size() >= discoverLimit) return;
+        String page;
+        try {
+            page = URLDecoder.decode(link.trim(), "UTF-8").replace(' ', '-');
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return;
+        }
+        if (page.isEmpty() || page.indexOf('/') >= 0) return;
+        String identifier = MarkdownSectionParser.slug(page);
+        if (identifier.isEmpty() || configuredIdentifiers.contains(identifier) || found.containsKey(identifier)) return;
+        String raw;
+        try {
+            raw = discoverRaw + URLEncoder.encode(page, "UTF-8") + ".md";
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        if (configuredUrls.contains(raw)) return;
+        WikiSource source = discovered.get(identifier);
+        if (source == null) {
+            source = new WikiSource(identifier, null, page.replace('-', ' '), url(raw), new File(discoverDirectory, page + ".md"),
+                                    discoverLink + page, discoverParser, discoverInterval);
+        }
+        found.put(identifier, source);
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.ungefroren.discord.BetonHelper.utils.FetchResult;
+
+/**
+ * Statistics about one synchronization of the wiki
+ */
+public final class SyncReport {
+
+    private final int sources;
+    private final int skipped;
+    private final int failed;
+    private final long bytesTransferred;
+    private final long duration;
+    private final List<Source> sourceReports;
+    private final ChangeSet changes;
+    private final boolean complete;
+
+    public SyncReport(int sources, int skipped, int failed, long bytesTransferred, long duration,
+                      List<Source> sourceReports, ChangeSet changes) {
+        this(sources, skipped, failed, bytesTransferred, duration, sourceReports, changes, failed == 0);
+    }
+
+    public SyncReport(int sources, int skipped, int failed, long bytesTransferred, long duration,
+                      List<Source> sourceReports, ChangeSet changes, boolean complete) {
+        this.sources = sources;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.bytesTransferred = bytesTransferred;
+        this.duration = duration;
+        this.sourceReports = Collections.unmodifiableList(sourceReports);
+        this.changes = changes;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the number of sources that were synchronized
+     */
+    public int getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the number of sources that were unchanged and not parsed again
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the number of sources that could not be downloaded
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of bytes that were received over the network
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return how long the synchronization took in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the statistics of each source
+     */
+    public List<Source> getSourceReports() {
+        return sourceReports;
+    }
+
+    /**
+     * @return the tips that were added, modified or removed, always empty for the first synchronization
+     */
+    public ChangeSet getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return true if all configured pages of the current wiki could be downloaded, discovered pages and older
+     * versions may still have failed
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return sources + " sources, " + skipped + " unchanged, " + failed + " failed, "
+                + bytesTransferred + " bytes transferred in " + duration + "ms, tips: " + changes;
+    }
+
+    /**
+     * Statistics about the synchronization of a single source
+     */
+    public static final class Source {
+
+        private final String identifier;
+        private final FetchResult.Status status;
+        private final long bytesTransferred;
+        private final long downloadTime;
+        private final long parseTime;
+
+        public Source(String identifier, FetchResult.Status status, long bytesTransferred, long downloadTime,
+                      long parseTime) {
+            this.identifier = identifier;
+            this.status = status;
+            this.bytesTransferred = bytesTransferred;
+            this.downloadTime = downloadTime;
+            this.parseTime = parseTime;
+        }
+
+        /**
+         * @return the identifier of the category of the source
+         */
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return the outcome of the download
+         */
+        public FetchResult.Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the number of bytes that were received over the network
+         */
+        public long getBytesTransferred() {
+            return bytesTransferred;
+        }
+
+        /**
+         * @return how long the download took in milliseconds
+         */
+        public long getDownloadTime() {
+            return downloadTime;
+        }
+
+        /**
+         * @return how long parsing took in nanoseconds or -1 if the source was not parsed again
+         */
+        public long getParseTime() {
+            return parseTime;
+        }
+    }
+}
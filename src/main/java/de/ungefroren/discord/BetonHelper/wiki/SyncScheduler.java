@@ -0,0 +1,225 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.ungefroren.discord.BetonHelper.BetonHelperBot;
+import de.ungefroren.discord.BetonHelper.utils.FetchResult;
+
+/**
+ * Synchronizes the wiki on its own thread, so a long synchronization never delays other scheduled work.
+ * <p>
+ * The interval adapts to the wiki: it is halved after a synchronization that downloaded modified pages and grows by
+ * half after one that found nothing new, always staying between the minimum and maximum interval. Each delay is
+ * randomized by the jitter, so multiple bots don't download the wiki at the same moment.
+ * <p>
+ * After several failed synchronizations in a row the circuit breaker opens and the wiki is left alone for the
+ * cooldown, then a single synchronization decides if the breaker closes again.
+ */
+public class SyncScheduler {
+
+    /**
+     * The state of the circuit breaker
+     */
+    public enum State {
+        /**
+         * Synchronizations run in the adaptive interval
+         */
+        CLOSED,
+        /**
+         * Synchronizations failed repeatedly, the next one waits for the cooldown
+         */
+        OPEN,
+        /**
+         * The cooldown elapsed, the next synchronization closes or opens the breaker again
+         */
+        HALF_OPEN
+    }
+
+    private final BetonWiki wiki;
+    private final long minInterval;
+    private final long maxInterval;
+    private final double jitter;
+    private final int failureThreshold;
+    private final long cooldown;
+    private final ScheduledExecutorService executor;
+    private final LongAdder failures = new LongAdder();
+    private ScheduledFuture<?> next;
+    /**
+     * Counts the scheduled synchronizations, a synchronization only schedules the next one if no other one was
+     * scheduled while it was running
+     */
+    private long generation = 0;
+    private volatile long interval;
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures = 0;
+
+    /**
+     * Creates a scheduler configured by the system properties {@code betonhelper.sync.*}
+     *
+     * @param wiki the wiki to synchronize
+     */
+    public SyncScheduler(BetonWiki wiki) {
+        this(wiki, TimeUnit.MINUTES.toMillis(Long.getLong("betonhelper.sync.interval", 15)),
+             TimeUnit.MINUTES.toMillis(Long.getLong("betonhelper.sync.minInterval", 5)),
+             TimeUnit.MINUTES.toMillis(Long.getLong("betonhelper.sync.maxInterval", 60)),
+             Double.parseDouble(System.getProperty("betonhelper.sync.jitter", "0.1")),
+             Integer.getInteger("betonhelper.sync.breaker.failures", 3),
+             TimeUnit.MINUTES.toMillis(Long.getLong("betonhelper.sync.breaker.cooldown", 60)));
+    }
+
+    /**
+     * @param wiki             the wiki to synchronize
+     * @param interval         the interval in milliseconds to start with
+     * @param minInterval      the shortest interval in milliseconds
+     * @param maxInterval      the longest interval in milliseconds
+     * @param jitter           the fraction of each delay that is randomly added or subtracted, e.g. 0.1 for 10%
+     * @param failureThreshold the number of failed synchronizations in a row that open the circuit breaker
+     * @param cooldown         the time in milliseconds the circuit breaker stays open
+     */
+    public SyncScheduler(BetonWiki wiki, long interval, long minInterval, long maxInterval, double jitter,
+                         int failureThreshold, long cooldown) {
+        this.wiki = wiki;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = Math.max(minInterval, Math.min(maxInterval, interval));
+        this.jitter = jitter;
+        this.failureThreshold = failureThreshold;
+        this.cooldown = cooldown;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "WikiSync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules the first synchronization
+     *
+     * @param immediately if the wiki should be synchronized right away instead of after the interval
+     */
+    public synchronized void start(boolean immediately) {
+        schedule(immediately ? 0 : jittered(interval));
+    }
+
+    /**
+     * Synchronizes the wiki as soon as possible, even if the circuit breaker is open.
+     * The adaptive schedule continues after this synchronization.
+     */
+    public synchronized void trigger() {
+        BetonHelperBot.log.info("Synchronization of the wiki was triggered manually");
+        schedule(0);
+    }
+
+    private synchronized void schedule(long delay) {
+        if (executor.isShutdown()) return;
+        //A running synchronization is not cancelled, the next one is scheduled when it is done
+        if (next != null) next.cancel(false);
+        long generation = ++this.generation;
+        next = executor.schedule(() -> run(generation), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(long generation) {
+        synchronized (this) {
+            //The cooldown is over, this synchronization decides if the breaker closes again
+            if (state == State.OPEN) state = State.HALF_OPEN;
+        }
+        boolean success, modified = false;
+        try {
+            wiki.synchronizeWiki();
+            SyncReport report = wiki.getLastSyncReport();
+            success = report != null && report.isComplete();
+            if (report != null) {
+                for (SyncReport.Source source : report.getSourceReports()) {
+                    modified |= source.getStatus() == FetchResult.Status.MODIFIED;
+                }
+            }
+        } catch (RuntimeException e) {
+            BetonHelperBot.log.error("Error while synchronizing the wiki:", e);
+            success = false;
+        }
+        long delay;
+        synchronized (this) {
+            if (success) {
+                if (state != State.CLOSED) BetonHelperBot.log.info("Wiki is reachable again, closing the circuit breaker");
+                state = State.CLOSED;
+                consecutiveFailures = 0;
+                interval = modified ? Math.max(minInterval, interval / 2) : Math.min(maxInterval, interval + interval / 2);
+                delay = jittered(interval);
+            } else {
+                failures.increment();
+                consecutiveFailures++;
+                if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                    if (state != State.OPEN) {
+                        BetonHelperBot.log.warn(consecutiveFailures + " synchronizations failed in a row, opening the circuit"
+                                                        + " breaker for " + TimeUnit.MILLISECONDS.toMinutes(cooldown) + " minutes");
+                    }
+                    state = State.OPEN;
+                    delay = jittered(cooldown);
+                } else {
+                    delay = jittered(minInterval);
+                }
+            }
+            if (generation != this.generation) return;
+            schedule(delay);
+        }
+        BetonHelperBot.log.debug("Next synchronization of the wiki in " + TimeUnit.MILLISECONDS.toSeconds(delay) + "s");
+    }
+
+    /**
+     * @return the delay randomly changed by the jitter
+     */
+    private long jittered(long delay) {
+        if (jitter <= 0) return delay;
+        return Math.max(0, Math.round(delay * (1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter))));
+    }
+
+    /**
+     * Stops scheduling synchronizations, a running one is interrupted
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the current interval between two synchronizations in milliseconds, without jitter
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the state of the circuit breaker
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of synchronizations that failed
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+}
@@ -100,6 +100,60 @@ public class Tip {
         return this;
     }
 
+    /**
+     * Adds an existing additional information, so equal information can be shared between tips
+     */
+    Tip addAdditionalInformation(AdditionalInfo info) {
+        additionalInformation.add(info);
+        return this;
+    }
+
+    /**
+     * Hashes everything that is shown to users, so two tips with the same hash almost certainly show the same content
+     *
+     * @return a 64 bit FNV-1a hash of the content of this tip
+     */
+    final long getContentHash() {
+        long hash = hash(0xcbf29ce484222325L, title);
+        hash = hash(hash, text);
+        hash = hash(hash, identifier);
+        for (String alternative : alternativeIdentifiers) hash = hash(hash, alternative);
+        for (AdditionalInfo info : additionalInformation) hash = hash(hash(hash, info.getTitle()), info.getContent());
+        return hash;
+    }
+
+    /**
+     * Compares everything the content hash is computed from, so two tips with the same hash are only treated as
+     * equal if they really are
+     *
+     * @param other another tip
+     * @return true if both tips have the same type, title, text, identifiers and additional information
+     */
+    final boolean sameContent(Tip other) {
+        if (getClass() != other.getClass() || !Objects.equals(title, other.title) || !Objects.equals(text, other.text)
+                || !Objects.equals(identifier, other.identifier)
+                || !Arrays.equals(alternativeIdentifiers, other.alternativeIdentifiers)) {
+            return false;
+        }
+        List<AdditionalInfo> infos = other.additionalInformation;
+        if (additionalInformation.size() != infos.size()) return false;
+        for (int i = 0; i < infos.size(); i++) {
+            if (!Objects.equals(additionalInformation.get(i).getTitle(), infos.get(i).getTitle())
+                    || !Objects.equals(additionalInformation.get(i).getContent(), infos.get(i).getContent())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(long hash, String string) {
+        if (string != null) {
+            for (int i = 0; i < string.length(); i++) hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+        }
+        //Separates the strings, so moving characters from one to the next changes the hash
+        return (hash ^ 0xFFFF) * 0x100000001b3L;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -22,6 +22,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import de.ungefroren.discord.BetonHelper.utils.BKTree;
+import de.ungefroren.discord.BetonHelper.utils.PrefixIndex;
+
 /**
  * A category of multiple tips that also contains it's own description
  * <p>
@@ -33,17 +36,24 @@ public class TipCategory extends Tip {
 
     protected final HashMap<String, Tip> subTips;
     protected final List<String> identifiers;
+    private final List<Tip> subTipList;
+    private final BKTree<Tip> similarSubTips;
+    private final PrefixIndex<Tip> subTipPrefixes;
 
     public TipCategory(String title, String identifier, String text, Iterable<Tip> subTips, String... alternativeIdentifiers) {
         super(title, text, identifier, alternativeIdentifiers);
         this.subTips = new HashMap<>();
         this.identifiers = new ArrayList<>();
+        this.subTipList = new ArrayList<>();
         for (Tip subTip : subTips) {
             identifiers.add(subTip.identifier);
+            subTipList.add(subTip);
             for (String id : subTip.getAllIdentifiers()) {
                 this.subTips.put(id.toLowerCase(), subTip);
             }
         }
+        this.similarSubTips = new BKTree<>(this.subTips);
+        this.subTipPrefixes = new PrefixIndex<>(this.subTips);
     }
 
     /**
@@ -56,6 +66,35 @@ public class TipCategory extends Tip {
         return subTips.get(identifier);
     }
 
+    /**
+     * Gets the sub tip with the identifier that is most similar to the given (possibly misspelled) word
+     *
+     * @param word        the lowercase word
+     * @param maxDistance the maximum number of edits between the word and the identifier
+     * @return the best match or null if no identifier is similar enough
+     */
+    public final BKTree.Match<Tip> getSimilarSubTip(String word, int maxDistance) {
+        return similarSubTips.findBest(word, maxDistance);
+    }
+
+    /**
+     * Gets the sub tips with an identifier (alternate ones will also work) that starts with the given word
+     *
+     * @param prefix the lowercase beginning of an identifier
+     * @param limit  the maximum number of sub tips
+     * @return the sub tips in alphabetical order of their identifiers, at most {@code limit}
+     */
+    public final List<Tip> getSubTipsByPrefix(String prefix, int limit) {
+        return subTipPrefixes.complete(prefix, limit);
+    }
+
+    /**
+     * @return a unmodifiable list of all sub tips in the order they were added
+     */
+    public final List<Tip> getSubTips() {
+        return Collections.unmodifiableList(subTipList);
+    }
+
     /**
      * Can be used to get the identifiers of all sub tips
      * <p>
@@ -0,0 +1,104 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicates the tips of all versions of the wiki during a synchronization.
+ * <p>
+ * A tip that has the same content as a known tip is replaced by the known one, so versions share all unchanged tips
+ * and everything that was derived from them. Of changed tips at least the equal strings and additional information
+ * are shared. The pool is filled with the current tips of all versions before each synchronization and dropped
+ * afterwards, so it never keeps tips alive that are no longer used.
+ */
+final class TipPool {
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, Tip.AdditionalInfo> infos = new HashMap<>();
+    private final Map<Long, Tip> tips = new HashMap<>();
+    private final Map<Long, TipCategory> categories = new HashMap<>();
+
+    /**
+     * Adds a category and its sub tips as they are, without deduplicating them
+     *
+     * @param category the category
+     */
+    void add(TipCategory category) {
+        categories.putIfAbsent(category.getContentHash(), category);
+        for (Tip tip : category.getSubTips()) {
+            tips.putIfAbsent(tip.getContentHash(), tip);
+            for (Tip.AdditionalInfo info : tip.getAdditionalInformation()) {
+                infos.putIfAbsent(info.getTitle() + '\0' + info.getContent(), info);
+            }
+        }
+    }
+
+    /**
+     * @param tip a tip that is no category
+     * @return a known tip with the same content or a copy of the tip that shares all known strings
+     */
+    Tip intern(Tip tip) {
+        long hash = tip.getContentHash();
+        Tip known = tips.get(hash);
+        if (known != null && known.sameContent(tip)) return known;
+        String[] alternatives = new String[tip.alternativeIdentifiers.length];
+        for (int i = 0; i < alternatives.length; i++) alternatives[i] = string(tip.alternativeIdentifiers[i]);
+        Tip copy = new Tip(string(tip.title), string(tip.text), string(tip.identifier), alternatives);
+        for (Tip.AdditionalInfo info : tip.getAdditionalInformation()) {
+            String key = info.getTitle() + '\0' + info.getContent();
+            Tip.AdditionalInfo shared = infos.get(key);
+            if (shared == null) {
+                shared = new Tip.AdditionalInfo(string(info.getTitle()), string(info.getContent()));
+                infos.put(key, shared);
+            }
+            copy.addAdditionalInformation(shared);
+        }
+        tips.putIfAbsent(hash, copy);
+        return copy;
+    }
+
+    /**
+     * @param category a category whose sub tips were already interned
+     * @return a known category with the same content and the same sub tips or the given one
+     */
+    TipCategory intern(TipCategory category) {
+        TipCategory known = categories.get(category.getContentHash());
+        if (known != null && known.sameContent(category) && sameTips(known.getSubTips(), category.getSubTips())) {
+            return known;
+        }
+        categories.putIfAbsent(category.getContentHash(), category);
+        return category;
+    }
+
+    private String string(String string) {
+        if (string == null) return null;
+        String known = strings.putIfAbsent(string, string);
+        return known == null ? string : known;
+    }
+
+    private static boolean sameTips(List<Tip> a, List<Tip> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+}
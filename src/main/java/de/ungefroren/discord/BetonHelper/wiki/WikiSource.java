@@ -0,0 +1,268 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import de.ungefroren.discord.BetonHelper.utils.HttpSource;
+
+/**
+ * A page of the wiki that contains one category of tips
+ */
+public class WikiSource {
+
+    /**
+     * How the sections of a page are found
+     */
+    public enum Parser {
+        /**
+         * Each heading like {@code ## Title: `identifier`} starts a section
+         */
+        SECTIONS,
+        /**
+         * Like {@link #SECTIONS}, but the headings can contain modifiers like {@code _persistent_}
+         */
+        ATTRIBUTES,
+        /**
+         * Each heading like {@code ## Title} starts a section, used for pages that are no lists of identifiers
+         */
+        HEADINGS
+    }
+
+    private final String identifier;
+    private final String pluralIdentifier;
+    private final String title;
+    private final HttpSource httpSource;
+    private final String baseUrl;
+    private final Parser parser;
+    private final long interval;
+    private long lastFetched;
+    private TipCategory category;
+
+    /**
+     * @param identifier       the identifier of the category, e.g. {@code event}
+     * @param pluralIdentifier the alternative plural identifier of the category, e.g. {@code events}
+     * @param title            the title of the category
+     * @param rawUrl           the url to download the raw markdown of the page from
+     * @param file             the local file the page is saved to
+     * @param baseUrl          the url of the page that is linked in the tips
+     * @param withAttributes   if the headings of the sections can contain modifiers (static/persistent)
+     */
+    public WikiSource(String identifier, String pluralIdentifier, String title, URL rawUrl, File file, String baseUrl,
+                      boolean withAttributes) {
+        this(identifier, pluralIdentifier, title, rawUrl, file, baseUrl, withAttributes ? Parser.ATTRIBUTES : Parser.SECTIONS, 0);
+    }
+
+    /**
+     * @param identifier       the identifier of the category, e.g. {@code event}
+     * @param pluralIdentifier the alternative plural identifier of the category, e.g. {@code events}, may be null
+     * @param title            the title of the category
+     * @param rawUrl           the url to download the raw markdown of the page from
+     * @param file             the local file the page is saved to
+     * @param baseUrl          the url of the page that is linked in the tips
+     * @param parser           how the sections of the page are found
+     * @param interval         the minimum time in milliseconds between two downloads of the page, 0 to download it
+     *                         with each synchronization
+     */
+    public WikiSource(String identifier, String pluralIdentifier, String title, URL rawUrl, File file, String baseUrl,
+                      Parser parser, long interval) {
+        this.identifier = identifier;
+        this.pluralIdentifier = pluralIdentifier;
+        this.title = title;
+        this.httpSource = new HttpSource(rawUrl, file);
+        this.baseUrl = baseUrl;
+        this.parser = parser;
+        this.interval = interval;
+    }
+
+    /**
+     * Gets the url to a section of the wiki
+     *
+     * @param baseUrl      the base url of the site that contains the section
+     * @param sectionTitle the title of the section
+     * @return the direct url to the section
+     */
+    private static String getSectionUrl(String baseUrl, String sectionTitle) {
+        return baseUrl + "#" + sectionTitle.toLowerCase().replaceAll("[^a-zA-Z\\s0-9]", "").replaceAll("\\s", "-");
+    }
+
+    private static String getSectionUrl(String baseUrl, String... sectionTitle) {
+        StringBuilder titleBuilder = new StringBuilder();
+        for (String string : sectionTitle) {
+            if (string == null) continue;
+            if (titleBuilder.length() != 0) titleBuilder.append(' ');
+            titleBuilder.append(string);
+        }
+        return getSectionUrl(baseUrl, titleBuilder.toString());
+    }
+
+    /**
+     * Parses the content of the page into a category containing one tip for each section
+     *
+     * @param content the raw markdown of the page
+     * @return the parsed category
+     */
+    public TipCategory parse(CharSequence content) {
+        return newCategory(parseSections(content));
+    }
+
+    /**
+     * Parses the content of the page again and compares it with the category of the last synchronization.
+     * <p>
+     * Tips whose content did not change are taken over from the last category, so everything that was derived from
+     * them can be reused. A matching content hash is confirmed by comparing the content itself. If no tip changed at
+     * all the last category itself is returned. New tips are deduplicated with the tips of the other versions of the
+     * wiki.
+     *
+     * @param content the raw markdown of the page
+     * @param changes collects the added, modified and removed tips, nothing is collected if there was no category yet
+     * @param pool    the tips of all versions of the wiki
+     * @return the parsed category
+     */
+    TipCategory reparse(CharSequence content, ChangeSet.Builder changes, TipPool pool) {
+        List<Tip> parsed = parseSections(content);
+        TipCategory previous = category;
+        if (previous == null) {
+            List<Tip> tips = new ArrayList<>(parsed.size());
+            for (Tip tip : parsed) tips.add(pool.intern(tip));
+            return pool.intern(newCategory(tips));
+        }
+        Map<String, Tip> remaining = new LinkedHashMap<>();
+        for (Tip tip : previous.getSubTips()) remaining.put(tip.getIdentifier(), tip);
+        List<Tip> tips = new ArrayList<>(parsed.size());
+        for (Tip tip : parsed) {
+            Tip old = remaining.remove(tip.getIdentifier());
+            if (old != null && old.getContentHash() == tip.getContentHash() && old.sameContent(tip)) {
+                tips.add(old);
+                continue;
+            }
+            tip = pool.intern(tip);
+            tips.add(tip);
+            changes.add(old == null ? ChangeSet.Type.ADDED : ChangeSet.Type.MODIFIED, identifier, tip);
+        }
+        for (Tip removed : remaining.values()) changes.add(ChangeSet.Type.REMOVED, identifier, removed);
+        TipCategory updated = newCategory(tips);
+        boolean unchanged = previous.getContentHash() == updated.getContentHash()
+                && previous.sameContent(updated) && previous.getSubTips().size() == tips.size();
+        for (int i = 0; unchanged && i < tips.size(); i++) unchanged = previous.getSubTips().get(i) == tips.get(i);
+        return unchanged ? previous : pool.intern(updated);
+    }
+
+    private List<Tip> parseSections(CharSequence content) {
+        MarkdownSectionParser parser = new MarkdownSectionParser(content, this.parser == Parser.ATTRIBUTES,
+                                                                 this.parser == Parser.HEADINGS);
+        List<Tip> tips = new ArrayList<>();
+        while (parser.find()) {
+            final String
+                    title = parser.getTitle(),
+                    identifier = parser.getIdentifier(),
+                    attributes = parser.getModifiers(),
+                    text = parser.getBody();
+            if (identifier.isEmpty()) continue;
+            final String url = this.parser == Parser.HEADINGS ? getSectionUrl(baseUrl, title)
+                    : getSectionUrl(baseUrl, title, identifier, attributes);
+            Tip tip = new Tip(this.parser == Parser.HEADINGS ? title : title + " " + this.identifier, text, identifier)
+                    .addAdditionalInformation("Attributes:", attributes)
+                    .addAdditionalInformation("Link:", url);
+            tips.add(tip);
+        }
+        return tips;
+    }
+
+    private TipCategory newCategory(List<Tip> tips) {
+        StringJoiner join = new StringJoiner(", ");
+        for (Tip tip : tips) join.add(tip.getIdentifier());
+        String text = "Here is a list of all known " + (pluralIdentifier == null ? title : pluralIdentifier)
+                + ":\n```" + join.toString() + "```";
+        TipCategory category = pluralIdentifier == null ? new TipCategory(title, identifier, text, tips)
+                : new TipCategory(title, identifier, text, tips, pluralIdentifier);
+        category.addAdditionalInformation("Link:", baseUrl);
+        return category;
+    }
+
+    /**
+     * @return the identifier of the category, e.g. {@code event}
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Creates the same page of another version of the wiki
+     *
+     * @param rawUrl the url to download the raw markdown of the page in this version from
+     * @param file   the local file the page in this version is saved to
+     * @return the page of the other version
+     */
+    WikiSource relocate(URL rawUrl, File file) {
+        return new WikiSource(identifier, pluralIdentifier, title, rawUrl, file, baseUrl, parser, interval);
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return if the page should be downloaded again
+     */
+    boolean isDue(long now) {
+        return category == null || now - lastFetched >= interval;
+    }
+
+    /**
+     * Remembers when the page was downloaded, so it is not downloaded again before its interval elapsed
+     *
+     * @param now the current time in milliseconds
+     */
+    void fetched(long now) {
+        lastFetched = now;
+    }
+
+    /**
+     * @return the remote page and its local copy
+     */
+    public HttpSource getHttpSource() {
+        return httpSource;
+    }
+
+    /**
+     * @return the local file the page is saved to
+     */
+    public File getFile() {
+        return httpSource.getFile();
+    }
+
+    /**
+     * @return the category that was parsed from this page during the last synchronization or null
+     */
+    TipCategory getCategory() {
+        return category;
+    }
+
+    void setCategory(TipCategory category) {
+        this.category = category;
+    }
+
+    @Override
+    public String toString() {
+        return httpSource.getFile().getName();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An older version of the wiki that is kept next to the current one, e.g. the pages of a release tag.
+ * <p>
+ * Users get answers from it if their message contains one of its keywords or if it is the default of their guild.
+ */
+public final class WikiVersion {
+
+    private final String name;
+    private final Set<String> keywords;
+    private final Set<Long> guilds;
+    private final List<WikiSource> sources;
+    private volatile KnowledgeSnapshot snapshot;
+
+    /**
+     * @param name     the name of the version
+     * @param keywords the lowercase words that select this version in a message
+     * @param guilds   the ids of the guilds that use this version by default
+     * @param sources  the pages of this version
+     */
+    WikiVersion(String name, Set<String> keywords, Set<Long> guilds, List<WikiSource> sources) {
+        this.name = name;
+        this.keywords = Collections.unmodifiableSet(keywords);
+        this.guilds = Collections.unmodifiableSet(guilds);
+        this.sources = Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * @return the name of the version
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the lowercase words that select this version in a message
+     */
+    public Set<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @return the ids of the guilds that use this version by default
+     */
+    public Set<Long> getGuilds() {
+        return guilds;
+    }
+
+    /**
+     * @return the pages of this version
+     */
+    public List<WikiSource> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the currently published snapshot of this version, null until the wiki published the first one
+     */
+    public KnowledgeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(KnowledgeSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
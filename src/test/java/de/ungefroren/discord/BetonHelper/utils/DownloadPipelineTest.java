@@ -0,0 +1,155 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link DownloadPipeline} against a local http server
+ */
+public class DownloadPipelineTest {
+
+    private static final byte[] CONTENT = "# Events List\n".getBytes(StandardCharsets.UTF_8);
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private DownloadPipeline pipeline;
+    private Path directory;
+    private final AtomicInteger flakyRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/page.md", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                respond(exchange, 304, null);
+            } else {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                respond(exchange, 200, CONTENT);
+            }
+        });
+        server.createContext("/flaky.md", exchange -> {
+            if (flakyRequests.incrementAndGet() < 3) respond(exchange, 503, "Busy".getBytes(StandardCharsets.UTF_8));
+            else respond(exchange, 200, CONTENT);
+        });
+        server.createContext("/slow.md", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, CONTENT);
+        });
+        //The slow handler must not block the other ones
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+        directory = Files.createTempDirectory("downloads");
+        pipeline = new DownloadPipeline(2, 1, 1000, 300, 3, 50);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pipeline.shutdown();
+        server.stop(0);
+        handlers.shutdownNow();
+        for (File file : directory.toFile().listFiles()) Files.delete(file.toPath());
+        Files.delete(directory);
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private HttpSource source(String path) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+        return new HttpSource(url, directory.resolve(path.substring(1)).toFile());
+    }
+
+    @Test
+    public void unchangedPageIsNotTransferredAgain() throws Exception {
+        HttpSource source = source("/page.md");
+        FetchResult first = pipeline.fetchAll(Arrays.asList(source), 5000).get(source);
+        assertEquals(FetchResult.Status.MODIFIED, first.getStatus());
+        assertArrayEquals(CONTENT, first.getContent());
+        assertEquals(ETAG, source.getEtag());
+
+        FetchResult second = pipeline.fetchAll(Arrays.asList(source), 5000).get(source);
+        assertEquals(FetchResult.Status.NOT_MODIFIED, second.getStatus());
+        assertEquals(0, second.getBytesTransferred());
+        assertArrayEquals(CONTENT, Files.readAllBytes(source.getFile().toPath()));
+    }
+
+    @Test
+    public void failedDownloadIsRetried() throws Exception {
+        HttpSource source = source("/flaky.md");
+        FetchResult result = pipeline.fetch(source).get(5, TimeUnit.SECONDS);
+        assertEquals(FetchResult.Status.MODIFIED, result.getStatus());
+        assertEquals(3, flakyRequests.get());
+        //Two retries with a backoff of 50ms and 100ms
+        assertTrue(result.getDuration() >= 150);
+    }
+
+    @Test
+    public void readTimeoutFailsAfterAllAttempts() throws Exception {
+        HttpSource slow = source("/slow.md"), page = source("/page.md");
+        long start = System.nanoTime();
+        FetchResult result = pipeline.fetchAll(Arrays.asList(slow), 5000).get(slow);
+        assertEquals(FetchResult.Status.FAILED, result.getStatus());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertTrue(!slow.getFile().exists());
+        //Another download is not held up by the failed one
+        assertEquals(FetchResult.Status.MODIFIED, pipeline.fetch(page).get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    public void waitingDownloadTimesOut() throws Exception {
+        HttpSource slow = source("/slow.md");
+        FetchResult result = pipeline.fetchAll(Arrays.asList(slow), 100).get(slow);
+        assertEquals(FetchResult.Status.FAILED, result.getStatus());
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * BetonHelperBot
+ * Copyright (C) 2018 Jonas Blocher
+ * <p>
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ungefroren.discord.BetonHelper.wiki;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.ungefroren.discord.BetonHelper.utils.FileHelper;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link MarkdownSectionParser} finds exactly the same tips in the fixture pages as the regular
+ * expressions that were used before it
+ * <p>
+ * The fixtures are synthetic, hand-written pages in the format of the wiki, not copies of the real pages. The
+ * benchmarks use the same files.
+ */
+public class LegacyParserRegressionTest {
+
+    private static final String BASE_URL = "https://github.com/Co0sh/BetonQuest/wiki/";
+
+    /**
+     * The regular expression that matched the sections of the events, conditions and objectives pages, group 1 is
+     * the title, group 2 the identifier, group 3 could be modifiers (static/persistent) and group 4 is the description
+     */
+    private static final Pattern ATTRIBUTES_REGEX = Pattern.compile(
+            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t]*(_[^\\n]+_)?[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$");
+    /**
+     * The regular expression that matched the sections of the variables page, group 1 is the title, group 2 the
+     * identifier and group 3 is the description
+     */
+    private static final Pattern VARIABLES_REGEX = Pattern.compile(
+            "(?m)^[ \\t]*##[ \\t]+([^:\\n]+)[ \\t]*:[ \\t]*`([^`\\n]+)`[ \\t\\n]*((\\n?[ \\t]*[^\\n#]*)+)$");
+
+    @Test
+    public void events() throws IOException {
+        check("event", "events", "Events List", "Events-List.md", true);
+    }
+
+    @Test
+    public void conditions() throws IOException {
+        check("condition", "conditions", "Conditions List", "Conditions-List.md", true);
+    }
+
+    @Test
+    public void objectives() throws IOException {
+        check("objective", "objectives", "Objectives List", "Objectives-List.md", true);
+    }
+
+    @Test
+    public void variables() throws IOException {
+        check("variable", "variables", "Variables List", "Variables-List.md", false);
+    }
+
+    private static void check(String identifier, String plural, String title, String fixture, boolean withAttributes)
+            throws IOException {
+        String content = load(fixture);
+        String baseUrl = BASE_URL + fixture.substring(0, fixture.length() - 3);
+        WikiSource source = new WikiSource(identifier, plural, title, new URL(baseUrl + ".md"), new File(fixture),
+                                           baseUrl, withAttributes);
+        List<Tip> expected = withAttributes ? legacyAttributes(content, identifier, baseUrl)
+                : legacyVariables(content, identifier, baseUrl);
+        List<Tip> actual = source.parse(content).getSubTips();
+        assertTrue("No sections in " + fixture, !expected.isEmpty());
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static List<Tip> legacyAttributes(String content, String category, String baseUrl) {
+        Matcher matcher = ATTRIBUTES_REGEX.matcher(content);
+        List<Tip> tips = new ArrayList<>();
+        while (matcher.find()) {
+            final String
+                    title = matcher.group(1),
+                    identifier = matcher.group(2),
+                    attributes = matcher.group(3),
+                    text = matcher.group(4),
+                    url = getSectionUrl(baseUrl, title, identifier, attributes);
+            tips.add(new Tip(title + " " + category, text, identifier)
+                             .addAdditionalInformation("Attributes:", attributes)
+                             .addAdditionalInformation("Link:", url));
+        }
+        return tips;
+    }
+
+    private static List<Tip> legacyVariables(String content, String category, String baseUrl) {
+        Matcher matcher = VARIABLES_REGEX.matcher(content);
+        List<Tip> tips = new ArrayList<>();
+        while (matcher.find()) {
+            final String
+                    title = matcher.group(1),
+                    identifier = matcher.group(2),
+                    text = matcher.group(3),
+                    url = getSectionUrl(baseUrl, title, identifier);
+            tips.add(new Tip(title + " " + category, text, identifier)
+                             .addAdditionalInformation("Link:", url));
+        }
+        return tips;
+    }
+
+    private static String getSectionUrl(String baseUrl, String... sectionTitle) {
+        StringBuilder titleBuilder = new StringBuilder();
+        for (String string : sectionTitle) {
+            if (string == null) continue;
+            if (titleBuilder.length() != 0) titleBuilder.append(' ');
+            titleBuilder.append(string);
+        }
+        return baseUrl + "#" + titleBuilder.toString().toLowerCase().replaceAll("[^a-zA-Z\\s0-9]", "").replaceAll("\\s", "-");
+    }
+
+    /**
+     * Lists everything a tip shows, since tips are equal as soon as their identifiers are
+     */
+    private static List<String> describe(List<Tip> tips) {
+        List<String> described = new ArrayList<>();
+        for (Tip tip : tips) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(tip.getIdentifier()).append('\n').append(tip.getTitle()).append('\n').append(tip.getText());
+            for (Tip.AdditionalInfo info : tip.getAdditionalInformation()) {
+                builder.append('\n').append(info.getTitle()).append(' ').append(info.getContent());
+            }
+            described.add(builder.toString());
+        }
+        return described;
+    }
+
+    private static String load(String name) throws IOException {
+        try (InputStream in = LegacyParserRegressionTest.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IOException("Missing fixture " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return FileHelper.toText(out.toByteArray());
+        }
+    }
+}